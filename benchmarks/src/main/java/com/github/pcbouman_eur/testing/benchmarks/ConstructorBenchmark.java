@@ -0,0 +1,71 @@
+/* Copyright 2022 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.github.pcbouman_eur.testing.benchmarks;
+
+import com.github.pcbouman_eur.testing.wrapper.WrapperFactory;
+import com.github.pcbouman_eur.testing.wrapper.demo.PrimeGenerator;
+import com.github.pcbouman_eur.testing.wrapper.demo.SillyCounting;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of creating objects of the student class through the constructor methods of a
+ * WrapperFactory, compared to calling the constructor directly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConstructorBenchmark {
+
+    private WrapperFactory<PrimeBenchmarkInterface, PrimeGenerator> primes;
+    private WrapperFactory<SillyCountingBenchmarkInterface, SillyCounting> counting;
+    private int start;
+
+    @Setup
+    public void setup() {
+        primes = new WrapperFactory<>(PrimeBenchmarkInterface.class, PrimeGenerator.class);
+        counting = new WrapperFactory<>(SillyCountingBenchmarkInterface.class, SillyCounting.class);
+        start = 17;
+    }
+
+    @Benchmark
+    public PrimeGenerator direct() {
+        return new PrimeGenerator(start);
+    }
+
+    @Benchmark
+    public PrimeGenerator rawConstructor() {
+        return primes.rawConstructor(start);
+    }
+
+    @Benchmark
+    public PrimeBenchmarkInterface constructor() {
+        return primes.constructor(start);
+    }
+
+    @Benchmark
+    public PrimeGenerator rawTypedConstructor() {
+        return primes.rawTypedConstructor(new Class<?>[]{int.class}, start);
+    }
+
+    @Benchmark
+    public SillyCountingBenchmarkInterface sillyCountingConstructor() {
+        return counting.constructor(start);
+    }
+}
@@ -0,0 +1,27 @@
+/* Copyright 2022 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.github.pcbouman_eur.testing.benchmarks;
+
+/**
+ * Target interface for the PrimeGenerator class of the demo module. Unlike the interface used by the
+ * demo tests, it contains every method of the class, so the benchmarks can reset the generator.
+ */
+public interface PrimeBenchmarkInterface {
+
+    int nextPrime();
+    boolean checkPrime();
+    void setStart(int i);
+
+}
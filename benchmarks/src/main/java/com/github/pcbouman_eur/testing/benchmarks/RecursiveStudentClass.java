@@ -0,0 +1,30 @@
+/* Copyright 2022 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.github.pcbouman_eur.testing.benchmarks;
+
+/**
+ * Class that mimics a recursive student implementation that fails once the recursion reaches its base case.
+ * It produces exceptions with deep stack traces for the sanitizer benchmark.
+ */
+public class RecursiveStudentClass {
+
+    public int countDown(int n) {
+        if (n <= 0) {
+            throw new IllegalStateException("The base case was not handled correctly");
+        }
+        return countDown(n - 1) + 1;
+    }
+
+}
@@ -0,0 +1,63 @@
+/* Copyright 2022 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.github.pcbouman_eur.testing.benchmarks;
+
+import com.github.pcbouman_eur.testing.soft_assert.SoftAssertionData;
+import com.github.pcbouman_eur.testing.soft_assert.SoftAssertionTextLayout;
+import org.opentest4j.AssertionFailedError;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time needed to produce the text report of a soft assertion context with many messages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReportBenchmark {
+
+    @Param({"10", "1000"})
+    public int messages;
+
+    private SoftAssertionData data;
+    private SoftAssertionTextLayout layout;
+
+    @Setup
+    public void setup() {
+        data = new SoftAssertionData(100);
+        for (int i=0; i < messages; i++) {
+            String msg = "Check if the silly count of " + i + " is correct";
+            for (int j=0; j < 100; j++) {
+                data.reportSuccess(msg);
+            }
+            if (i % 2 == 0) {
+                for (int j=0; j < 10; j++) {
+                    data.reportFailure(new AssertionFailedError(msg, "BARS\nNOSE " + j, "" + j), msg);
+                }
+            }
+        }
+        data.reportException(new IllegalStateException("An exception thrown by student code"));
+        layout = new SoftAssertionTextLayout(5, false, 10, null);
+    }
+
+    @Benchmark
+    public String getReport() {
+        return layout.getReport(data);
+    }
+}
@@ -0,0 +1,77 @@
+/* Copyright 2022 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.github.pcbouman_eur.testing.benchmarks;
+
+import com.github.pcbouman_eur.testing.sanitze.StackTraceSanitizer;
+import com.github.pcbouman_eur.testing.wrapper.WrapperFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time needed to sanitize the deep stack trace of an exception thrown by recursive student code that
+ * was called through a WrapperFactory. The cached benchmark sanitizes the same trace every time, as happens for
+ * exceptions thrown in a loop, while the uncached benchmark cycles through more distinct traces than the sanitizer
+ * keeps in its cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SanitizerBenchmark {
+
+    private static final int DEPTH = 60;
+    // More than the number of traces cached by a StackTraceSanitizer, a power of two to cycle through them cheaply
+    private static final int VARIANTS = 1024;
+
+    private StackTraceSanitizer sanitizer;
+    private StackTraceElement[] trace;
+    private StackTraceElement[][] variants;
+    private int next;
+
+    @Setup
+    public void setup() {
+        sanitizer = new StackTraceSanitizer(List.of("sun.reflect", "jdk.internal.reflect", "java.lang.invoke"),
+                List.of(), List.of(WrapperFactory.class.getName(), SanitizerBenchmark.class.getName()));
+        WrapperFactory<RecursiveInterface, RecursiveStudentClass> fac =
+                new WrapperFactory<>(RecursiveInterface.class, RecursiveStudentClass.class);
+        try {
+            fac.constructor().countDown(DEPTH);
+            throw new AssertionError("The recursive student class should fail");
+        } catch (IllegalStateException ex) {
+            trace = ex.getStackTrace();
+        }
+        // The variants only differ in the line number of the frame where the exception was thrown
+        variants = new StackTraceElement[VARIANTS][];
+        for (int i=0; i < VARIANTS; i++) {
+            StackTraceElement top = trace[0];
+            variants[i] = trace.clone();
+            variants[i][0] = new StackTraceElement(top.getClassName(), top.getMethodName(), top.getFileName(), i + 1);
+        }
+    }
+
+    @Benchmark
+    public StackTraceElement[] sanitize() {
+        return sanitizer.sanitize(trace);
+    }
+
+    @Benchmark
+    public StackTraceElement[] sanitizeUncached() {
+        return sanitizer.sanitize(variants[next++ & (VARIANTS - 1)]);
+    }
+}
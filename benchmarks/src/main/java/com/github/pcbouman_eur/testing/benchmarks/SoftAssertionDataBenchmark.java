@@ -0,0 +1,94 @@
+/* Copyright 2022 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.github.pcbouman_eur.testing.benchmarks;
+
+import com.github.pcbouman_eur.testing.soft_assert.SoftAssertionData;
+import org.opentest4j.AssertionFailedError;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatFactory;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of recording successful and failed soft assertions by threads sharing one
+ * SoftAssertionData object.
+ *
+ * The number of threads is set with the -t option of JMH, which is 1 by default. The main method of this class runs
+ * the benchmarks for several numbers of threads and writes the results of all runs to a single file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SoftAssertionDataBenchmark {
+
+    private static final int MESSAGES = 16;
+
+    private SoftAssertionData data;
+    private String[] messages;
+    private AssertionFailedError failure;
+
+    @State(Scope.Thread)
+    public static class Counter {
+        int next;
+    }
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        data = new SoftAssertionData(100);
+        messages = new String[MESSAGES];
+        for (int i=0; i < MESSAGES; i++) {
+            messages[i] = "Check if the next prime number after " + i + " is computed correctly";
+        }
+        failure = new AssertionFailedError("expected: <2> but was: <3>", 2, 3);
+    }
+
+    @Benchmark
+    public void reportSuccess(Counter counter) {
+        data.reportSuccess(messages[counter.next++ & (MESSAGES - 1)]);
+    }
+
+    @Benchmark
+    public void reportFailure(Counter counter) {
+        data.reportFailure(failure, messages[counter.next++ & (MESSAGES - 1)]);
+    }
+
+    /**
+     * Runs the benchmarks of this class for each of the given numbers of threads, 1, 2, 4 and 8 if none are given,
+     * and writes the results to soft-assertion-threads.json
+     * @param args the numbers of threads to run the benchmarks with
+     * @throws RunnerException if running the benchmarks failed
+     */
+    public static void main(String[] args) throws RunnerException {
+        String[] counts = args.length > 0 ? args : new String[]{"1", "2", "4", "8"};
+        List<RunResult> results = new ArrayList<>();
+        for (String count : counts) {
+            results.addAll(new Runner(new OptionsBuilder()
+                    .include(SoftAssertionDataBenchmark.class.getName())
+                    .threads(Integer.parseInt(count))
+                    .build()).run());
+        }
+        ResultFormatFactory.getInstance(ResultFormatType.JSON, "soft-assertion-threads.json").writeOut(results);
+    }
+}
@@ -0,0 +1,90 @@
+/* Copyright 2022 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package com.github.pcbouman_eur.testing.benchmarks;
+
+import com.github.pcbouman_eur.testing.wrapper.InvocationStrategy;
+import com.github.pcbouman_eur.testing.wrapper.WrapperFactory;
+import com.github.pcbouman_eur.testing.wrapper.demo.PrimeGenerator;
+import com.github.pcbouman_eur.testing.wrapper.demo.SillyCounting;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares calls on objects wrapped by a WrapperFactory with direct calls on the objects of the student class,
+ * for every invocation strategy.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WrapperBenchmark {
+
+    private static final int START = 1000;
+
+    @Param({"REFLECTION", "METHOD_HANDLE", "GENERATED_CLASS"})
+    public InvocationStrategy strategy;
+
+    private PrimeGenerator directPrimes;
+    private PrimeBenchmarkInterface wrappedPrimes;
+    private SillyCounting directCounting;
+    private SillyCountingBenchmarkInterface wrappedCounting;
+
+    @Setup
+    public void setup() {
+        WrapperFactory<PrimeBenchmarkInterface, PrimeGenerator> primes =
+                new WrapperFactory<>(PrimeBenchmarkInterface.class, PrimeGenerator.class, strategy);
+        WrapperFactory<SillyCountingBenchmarkInterface, SillyCounting> counting =
+                new WrapperFactory<>(SillyCountingBenchmarkInterface.class, SillyCounting.class, strategy);
+        directPrimes = new PrimeGenerator(START);
+        wrappedPrimes = primes.constructor(START);
+        directCounting = new SillyCounting(1);
+        wrappedCounting = counting.constructor(1);
+    }
+
+    @Benchmark
+    public int directNextPrime() {
+        directPrimes.setStart(START);
+        return directPrimes.nextPrime();
+    }
+
+    @Benchmark
+    public int wrappedNextPrime() {
+        wrappedPrimes.setStart(START);
+        return wrappedPrimes.nextPrime();
+    }
+
+    @Benchmark
+    public boolean directCheckPrime() {
+        return directPrimes.checkPrime();
+    }
+
+    @Benchmark
+    public boolean wrappedCheckPrime() {
+        return wrappedPrimes.checkPrime();
+    }
+
+    @Benchmark
+    public String directSillyCounting() {
+        return directCounting.getNextCount();
+    }
+
+    @Benchmark
+    public String wrappedSillyCounting() {
+        return wrappedCounting.getNextCount();
+    }
+}
@@ -0,0 +1,107 @@
+/* Copyright 2025 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.github.pcbouman_eur.testing.compiling;
+
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+
+import javax.lang.model.element.*;
+import javax.lang.model.type.TypeMirror;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Listens to a compilation task and records the signatures of all non-private members of the classes that are
+ * compiled. Code compiled against these classes only depends on these signatures, so that it compiles to the same
+ * class files if the signatures are the same. Annotations are part of the signatures, as annotations such as
+ * Deprecated change the diagnostics of code that uses the annotated classes.
+ */
+class ApiSignature implements TaskListener {
+
+    private final List<String> signatures = Collections.synchronizedList(new ArrayList<>());
+
+    @Override
+    public void finished(TaskEvent e) {
+        if (e.getKind() == TaskEvent.Kind.ANALYZE && e.getTypeElement() != null) {
+            StringBuilder sb = new StringBuilder();
+            append(sb, e.getTypeElement());
+            signatures.add(sb.toString());
+        }
+    }
+
+    /**
+     * Provides the recorded signatures in a form that does not depend on the order in which classes were analyzed
+     * @return the signatures of all analyzed classes
+     */
+    String getSignature() {
+        List<String> sorted = new ArrayList<>(signatures);
+        Collections.sort(sorted);
+        return String.join("\n", sorted);
+    }
+
+    private static void append(StringBuilder sb, TypeElement type) {
+        appendAnnotations(sb, type);
+        sb.append(type.getKind()).append(' ').append(type.getModifiers()).append(' ')
+                .append(type.getQualifiedName());
+        appendTypeParameters(sb, type.getTypeParameters());
+        sb.append(" extends ").append(type.getSuperclass()).append(" implements ").append(type.getInterfaces())
+                .append('\n');
+        for (Element member : type.getEnclosedElements()) {
+            if (member.getModifiers().contains(Modifier.PRIVATE)) {
+                continue;
+            }
+            if (member instanceof TypeElement) {
+                append(sb, (TypeElement) member);
+                continue;
+            }
+            sb.append("  ");
+            appendAnnotations(sb, member);
+            sb.append(member.getKind()).append(' ').append(member.getModifiers()).append(' ')
+                    .append(member.getSimpleName()).append(' ').append(member.asType());
+            if (member instanceof ExecutableElement) {
+                ExecutableElement method = (ExecutableElement) member;
+                appendTypeParameters(sb, method.getTypeParameters());
+                sb.append(" varargs ").append(method.isVarArgs()).append(" throws ").append(method.getThrownTypes());
+                for (VariableElement parameter : method.getParameters()) {
+                    sb.append(' ');
+                    appendAnnotations(sb, parameter);
+                    sb.append(parameter.asType());
+                }
+            }
+            else if (member instanceof VariableElement) {
+                sb.append(" = ").append(((VariableElement) member).getConstantValue());
+            }
+            sb.append('\n');
+        }
+    }
+
+    private static void appendAnnotations(StringBuilder sb, Element element) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            sb.append(annotation).append(' ');
+        }
+    }
+
+    private static void appendTypeParameters(StringBuilder sb, List<? extends TypeParameterElement> parameters) {
+        for (TypeParameterElement parameter : parameters) {
+            sb.append(" <").append(parameter.getSimpleName());
+            for (TypeMirror bound : parameter.getBounds()) {
+                sb.append(' ').append(bound);
+            }
+            sb.append('>');
+        }
+    }
+}
@@ -0,0 +1,404 @@
+/* Copyright 2025 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.github.pcbouman_eur.testing.compiling;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A cache of compilation results stored in a local directory.
+ *
+ * Results are stored under a key that is a hash of everything that determines the outcome of a compilation: the
+ * names and contents of the sources, the compiler options, the class path, the version of the JDK and, for code
+ * compiled against earlier results, the signatures of those results. Entries of the class path, both of the JVM and
+ * of class path options, are identified by the names, sizes and modification times of their jar and class files. A
+ * result consists of the class files, the diagnostics and the output of a compilation. Entries are written
+ * atomically, so a cache directory can be shared by compilations that run at the same time.
+ */
+public class CompilationCache {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final Path directory;
+
+    public CompilationCache(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    /**
+     * Computes the key of a compilation
+     * @param options the options passed to the compiler
+     * @param sources the sources that are compiled
+     * @param dependencies a description of other inputs, such as the signatures of classes compiled against
+     * @return the key of the compilation
+     * @throws IOException if one of the sources could not be read
+     */
+    public String key(List<String> options, List<JavaFileObject> sources, String dependencies) throws IOException {
+        return key(options, sources, dependencies, null);
+    }
+
+    /**
+     * Computes the key of a compilation that writes its classes to a directory
+     * @param options the options passed to the compiler
+     * @param sources the sources that are compiled
+     * @param dependencies a description of other inputs, such as the signatures of classes compiled against
+     * @param classOutput the directory the classes are written to, its contents are not part of the key if it is
+     *                    on the class path, as they are the result of the compilation itself. Can be null.
+     * @return the key of the compilation
+     * @throws IOException if one of the sources could not be read
+     */
+    public String key(List<String> options, List<JavaFileObject> sources, String dependencies, File classOutput)
+            throws IOException {
+        MessageDigest digest = newDigest();
+        update(digest, String.valueOf(FORMAT_VERSION));
+        update(digest, Runtime.version().toString());
+        update(digest, System.getProperty("java.class.path", ""));
+        update(digest, String.join("\u0000", options));
+        List<File> classPath = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+            if (!entry.isEmpty()) {
+                classPath.add(new File(entry));
+            }
+        }
+        TeacherAwareCompiler.removePathOptions(options, classPath);
+        Path output = classOutput == null ? null : classOutput.toPath().toAbsolutePath().normalize();
+        for (File entry : classPath) {
+            if (output != null && output.equals(entry.toPath().toAbsolutePath().normalize())) {
+                update(digest, entry.getPath());
+            }
+            else {
+                updateClassPathEntry(digest, entry);
+            }
+        }
+        for (JavaFileObject source : sources) {
+            update(digest, source.getName());
+            try (InputStream in = source.openInputStream()) {
+                byte [] content = in.readAllBytes();
+                digest.update(content);
+                digest.update((byte) 0);
+            }
+        }
+        update(digest, dependencies);
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Loads a stored compilation result
+     * @param key the key of the compilation
+     * @param sources the sources of the compilation, used as the sources of the stored diagnostics
+     * @return the stored result, or null if there is none
+     */
+    public Entry load(String key, List<JavaFileObject> sources) {
+        Path file = directory.resolve(key);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            boolean ok = in.readBoolean();
+            String signature = readString(in);
+            String output = readString(in);
+            Map<String, JavaFileObject> sourcesByName = new HashMap<>();
+            for (JavaFileObject source : sources) {
+                sourcesByName.put(source.getName(), source);
+            }
+            int diagnosticCount = in.readInt();
+            List<Diagnostic<? extends JavaFileObject>> diagnostics = new ArrayList<>();
+            for (int i=0; i < diagnosticCount; i++) {
+                diagnostics.add(CachedDiagnostic.read(in, sourcesByName));
+            }
+            int classCount = in.readInt();
+            Map<String, byte[]> classes = new LinkedHashMap<>();
+            for (int i=0; i < classCount; i++) {
+                String name = in.readUTF();
+                byte [] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                classes.put(name, bytes);
+            }
+            return new Entry(ok, signature, output, diagnostics, classes);
+        }
+        catch (NoSuchFileException ex) {
+            return null;
+        }
+        catch (IOException | RuntimeException ex) {
+            // A damaged entry is treated as a cache miss, it is replaced when the result is stored again
+            return null;
+        }
+    }
+
+    /**
+     * Stores a compilation result
+     * @param key the key of the compilation
+     * @param entry the result of the compilation
+     * @throws IOException if the result could not be written
+     */
+    public void store(String key, Entry entry) throws IOException {
+        Path tmp = Files.createTempFile(directory, key, ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeBoolean(entry.ok);
+                writeString(out, entry.signature);
+                writeString(out, entry.output);
+                out.writeInt(entry.diagnostics.size());
+                for (Diagnostic<? extends JavaFileObject> d : entry.diagnostics) {
+                    CachedDiagnostic.write(out, d);
+                }
+                out.writeInt(entry.classes.size());
+                for (Map.Entry<String, byte[]> e : entry.classes.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    out.writeInt(e.getValue().length);
+                    out.write(e.getValue());
+                }
+            }
+            Files.move(tmp, directory.resolve(key), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    static void writeString(DataOutputStream out, String str) throws IOException {
+        if (str == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte [] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte [] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void updateClassPathEntry(MessageDigest digest, File entry) throws IOException {
+        update(digest, entry.getPath());
+        if (entry.getName().equals("*")) {
+            // A wildcard entry stands for all jar files in the directory
+            File [] jars = entry.getAbsoluteFile().getParentFile().listFiles((dir, name) -> name.endsWith(".jar"));
+            if (jars != null) {
+                Arrays.sort(jars);
+                for (File jar : jars) {
+                    updateClassPathEntry(digest, jar);
+                }
+            }
+        }
+        else if (entry.isDirectory()) {
+            Path root = entry.toPath();
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(root)) {
+                files = walk.filter(p -> p.getFileName().toString().endsWith(".class"))
+                        .filter(Files::isRegularFile)
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                update(digest, root.relativize(file).toString());
+                updateFileStamp(digest, file.toFile());
+            }
+        }
+        else {
+            updateFileStamp(digest, entry);
+        }
+    }
+
+    private static void updateFileStamp(MessageDigest digest, File file) {
+        update(digest, file.length() + ":" + file.lastModified());
+    }
+
+    private static void update(MessageDigest digest, String str) {
+        digest.update(str.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException ex) {
+            throw new AssertionError("Every Java platform is required to support SHA-256", ex);
+        }
+    }
+
+    /**
+     * The stored result of a compilation
+     */
+    public static final class Entry {
+
+        private final boolean ok;
+        private final String signature;
+        private final String output;
+        private final List<Diagnostic<? extends JavaFileObject>> diagnostics;
+        private final Map<String, byte[]> classes;
+
+        /**
+         * Creates a compilation result that can be stored
+         * @param ok whether the compilation was successful
+         * @param signature the signatures of the compiled classes, used for code compiled against them
+         * @param output the output of the compilation
+         * @param diagnostics the diagnostics produced by the compiler
+         * @param classes the compiled class files, indexed by their binary names
+         */
+        public Entry(boolean ok, String signature, String output,
+                     List<Diagnostic<? extends JavaFileObject>> diagnostics, Map<String, byte[]> classes) {
+            this.ok = ok;
+            this.signature = signature;
+            this.output = output;
+            this.diagnostics = diagnostics;
+            this.classes = classes;
+        }
+
+        public boolean isOk() {
+            return ok;
+        }
+
+        public String getSignature() {
+            return signature;
+        }
+
+        public String getOutput() {
+            return output;
+        }
+
+        public List<Diagnostic<? extends JavaFileObject>> getDiagnostics() {
+            return diagnostics;
+        }
+
+        public Map<String, byte[]> getClasses() {
+            return classes;
+        }
+    }
+
+    /**
+     * A diagnostic restored from the cache. Messages are stored in English, as used for linter output.
+     */
+    private static final class CachedDiagnostic implements Diagnostic<JavaFileObject> {
+
+        private final Kind kind;
+        private final JavaFileObject source;
+        private final long position, startPosition, endPosition, lineNumber, columnNumber;
+        private final String code, message, rendered;
+
+        private CachedDiagnostic(Kind kind, JavaFileObject source, long position, long startPosition,
+                                 long endPosition, long lineNumber, long columnNumber, String code, String message,
+                                 String rendered) {
+            this.kind = kind;
+            this.source = source;
+            this.position = position;
+            this.startPosition = startPosition;
+            this.endPosition = endPosition;
+            this.lineNumber = lineNumber;
+            this.columnNumber = columnNumber;
+            this.code = code;
+            this.message = message;
+            this.rendered = rendered;
+        }
+
+        private static void write(DataOutputStream out, Diagnostic<? extends JavaFileObject> d) throws IOException {
+            out.writeUTF(d.getKind().name());
+            writeString(out, d.getSource() == null ? null : d.getSource().getName());
+            out.writeLong(d.getPosition());
+            out.writeLong(d.getStartPosition());
+            out.writeLong(d.getEndPosition());
+            out.writeLong(d.getLineNumber());
+            out.writeLong(d.getColumnNumber());
+            writeString(out, d.getCode());
+            writeString(out, d.getMessage(Locale.ENGLISH));
+            writeString(out, d.toString());
+        }
+
+        private static CachedDiagnostic read(DataInputStream in, Map<String, JavaFileObject> sources)
+                throws IOException {
+            Kind kind = Kind.valueOf(in.readUTF());
+            String sourceName = readString(in);
+            JavaFileObject source = sourceName == null ? null : sources.get(sourceName);
+            return new CachedDiagnostic(kind, source, in.readLong(), in.readLong(), in.readLong(), in.readLong(),
+                    in.readLong(), readString(in), readString(in), readString(in));
+        }
+
+        @Override
+        public Kind getKind() {
+            return kind;
+        }
+
+        @Override
+        public JavaFileObject getSource() {
+            return source;
+        }
+
+        @Override
+        public long getPosition() {
+            return position;
+        }
+
+        @Override
+        public long getStartPosition() {
+            return startPosition;
+        }
+
+        @Override
+        public long getEndPosition() {
+            return endPosition;
+        }
+
+        @Override
+        public long getLineNumber() {
+            return lineNumber;
+        }
+
+        @Override
+        public long getColumnNumber() {
+            return columnNumber;
+        }
+
+        @Override
+        public String getCode() {
+            return code;
+        }
+
+        @Override
+        public String getMessage(Locale locale) {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return rendered;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/* Copyright 2025 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.github.pcbouman_eur.testing.compiling;
+
+import javax.tools.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A file manager that keeps the class files produced by the compiler in memory, rather than writing them to
+ * the class output directory.
+ *
+ * Classes that were compiled earlier are listed as part of the class path, so that a later compilation task
+ * that uses the same file manager can compile against them. The compiled classes can be loaded through an
+ * InMemoryClassLoader.
+ */
+public class InMemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+
+    private final Map<String, byte[]> classes = new ConcurrentHashMap<>();
+
+    public InMemoryFileManager(StandardJavaFileManager fileManager) {
+        super(fileManager);
+    }
+
+    /**
+     * Provides the compiled classes stored by this file manager
+     * @return an unmodifiable view of the class files, indexed by their binary names
+     */
+    public Map<String, byte[]> getClasses() {
+        return Collections.unmodifiableMap(classes);
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+                                               FileObject sibling) throws IOException {
+        if (location == StandardLocation.CLASS_OUTPUT && kind == JavaFileObject.Kind.CLASS) {
+            return new ClassFile(className);
+        }
+        return super.getJavaFileForOutput(location, className, kind, sibling);
+    }
+
+    @Override
+    public boolean hasLocation(Location location) {
+        return location == StandardLocation.CLASS_OUTPUT || super.hasLocation(location);
+    }
+
+    @Override
+    public Iterable<JavaFileObject> list(Location location, String packageName, Set<JavaFileObject.Kind> kinds,
+                                         boolean recurse) throws IOException {
+        Iterable<JavaFileObject> listed = super.list(location, packageName, kinds, recurse);
+        if (location != StandardLocation.CLASS_PATH || !kinds.contains(JavaFileObject.Kind.CLASS)
+                || classes.isEmpty()) {
+            return listed;
+        }
+        List<JavaFileObject> result = new ArrayList<>();
+        for (String className : classes.keySet()) {
+            if (inPackage(className, packageName, recurse)) {
+                result.add(new ClassFile(className));
+            }
+        }
+        listed.forEach(result::add);
+        return result;
+    }
+
+    @Override
+    public String inferBinaryName(Location location, JavaFileObject file) {
+        if (file instanceof ClassFile) {
+            return ((ClassFile) file).className;
+        }
+        return super.inferBinaryName(location, file);
+    }
+
+    @Override
+    public boolean isSameFile(FileObject a, FileObject b) {
+        if (a instanceof ClassFile || b instanceof ClassFile) {
+            return a.toUri().equals(b.toUri());
+        }
+        return super.isSameFile(a, b);
+    }
+
+    private static boolean inPackage(String className, String packageName, boolean recurse) {
+        int index = className.lastIndexOf('.');
+        String classPackage = index < 0 ? "" : className.substring(0, index);
+        if (classPackage.equals(packageName)) {
+            return true;
+        }
+        if (!recurse) {
+            return false;
+        }
+        return packageName.isEmpty() || classPackage.startsWith(packageName + ".");
+    }
+
+    private final class ClassFile extends SimpleJavaFileObject {
+
+        private final String className;
+
+        private ClassFile(String className) {
+            super(URI.create("mem:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+            this.className = className;
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return new ByteArrayOutputStream() {
+                @Override
+                public void close() {
+                    classes.put(className, toByteArray());
+                }
+            };
+        }
+
+        @Override
+        public InputStream openInputStream() throws IOException {
+            byte[] bytes = classes.get(className);
+            if (bytes == null) {
+                throw new IOException("No class file was compiled for " + className);
+            }
+            return new ByteArrayInputStream(bytes);
+        }
+    }
+}
@@ -15,6 +15,8 @@
 
 package com.github.pcbouman_eur.testing.compiling;
 
+import com.sun.source.util.JavacTask;
+
 import javax.tools.*;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
@@ -25,7 +27,7 @@ public class TeacherAwareCompiler {
     private final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
     private final TeacherCompileJob job;
     private final List<String> compilerOptions;
-
+    private final CompilationCache cache;
 
     private final static String DISCLAIMER =
               "******\n"
@@ -33,24 +35,66 @@ public class TeacherAwareCompiler {
             + "* PLEASE CHECK THE SPECIFICATION GIVEN IN THE ASSIGNMENT DESCRIPTION TO SOLVE THESE ERRORS.\n"
             + "******\n";
 
+    private static final Set<String> CLASS_PATH_OPTIONS = Set.of("-cp", "-classpath", "--class-path");
+    private static final Set<String> SOURCE_PATH_OPTIONS = Set.of("-sourcepath", "--source-path");
+
     private final EnumSet<Diagnostic.Kind> FAILURES =
             EnumSet.of(Diagnostic.Kind.ERROR, Diagnostic.Kind.MANDATORY_WARNING);
 
     public TeacherAwareCompiler(TeacherCompileJob job, List<String> compilerOptions) {
+        this(job, compilerOptions, null);
+    }
+
+    /**
+     * Creates a compiler that reuses earlier results stored in a cache. The result of phase 1 is reused if the
+     * provided and student sources did not change. The result of phase 2 is reused if the teacher sources did not
+     * change and the signatures of the classes compiled in phase 1 are the same.
+     * @param job the sources to compile
+     * @param compilerOptions the options passed to the compiler
+     * @param cache the cache with earlier compilation results, or null to always compile all sources
+     */
+    public TeacherAwareCompiler(TeacherCompileJob job, List<String> compilerOptions, CompilationCache cache) {
         this.job = job;
         this.compilerOptions = new ArrayList<>(compilerOptions);
+        this.cache = cache;
     }
 
     public TeacherCompileResult compile(File classDir, boolean allowPackages) throws IOException {
-        StringWriter log = new StringWriter();
-        StringWriter output = new StringWriter();
-
         DiagnosticCollector<JavaFileObject> fmDiagnostics = new DiagnosticCollector<>();
-
-        // Obtain compilation units for both phases
         StandardJavaFileManager stdFm =
                 compiler.getStandardFileManager(fmDiagnostics, Locale.ROOT, StandardCharsets.UTF_8);
         stdFm.setLocation(StandardLocation.CLASS_OUTPUT, List.of(classDir));
+        if (cache == null) {
+            return compile(stdFm, stdFm, allowPackages, Collections.emptyMap());
+        }
+        // Compile in memory first, so that the class files can be stored in the cache
+        InMemoryFileManager memFm = new InMemoryFileManager(stdFm);
+        TeacherCompileResult result = compile(stdFm, memFm, allowPackages, memFm.getClasses());
+        writeClasses(stdFm, memFm.getClasses());
+        return result;
+    }
+
+    /**
+     * Compiles the sources of the job without writing any class files to disk. The compiled classes are kept
+     * in memory and can be loaded through the class loader provided by the result.
+     * @param allowPackages whether package declarations are allowed in the sources
+     * @return the result of the compilation, including the compiled classes
+     * @throws IOException if the sources could not be read
+     */
+    public TeacherCompileResult compileInMemory(boolean allowPackages) throws IOException {
+        DiagnosticCollector<JavaFileObject> fmDiagnostics = new DiagnosticCollector<>();
+        StandardJavaFileManager stdFm =
+                compiler.getStandardFileManager(fmDiagnostics, Locale.ROOT, StandardCharsets.UTF_8);
+        InMemoryFileManager memFm = new InMemoryFileManager(stdFm);
+        return compile(stdFm, memFm, allowPackages, memFm.getClasses());
+    }
+
+    private TeacherCompileResult compile(StandardJavaFileManager stdFm, JavaFileManager fm, boolean allowPackages,
+                                         Map<String, byte[]> classes) throws IOException {
+        StringWriter log = new StringWriter();
+        StringWriter output = new StringWriter();
+
+        // Obtain compilation units for both phases
         TeacherCompileJob.TeacherAwareFiles files = job.getTeacherAwareFiles(stdFm);
 
         // Configuration compiler options
@@ -59,52 +103,171 @@ public class TeacherAwareCompiler {
             options.add("-Xplugin:EnforceDefaultPackage");
         }
 
-        // 4. Create and run the task for Phase 1
-        DiagnosticCollector<JavaFileObject> phase1Diagnostics = new DiagnosticCollector<>();
-        log.append("Running phase 1 compilation task\n");
-        JavaCompiler.CompilationTask task = compiler.getTask(
-                null, stdFm, phase1Diagnostics, options, null, files.getPhase1Files());
-        boolean ok = task.call();
+        // 4. Create and run the task for Phase 1, unless its result is cached
+        Iterable<? extends File> outputLocation = stdFm.getLocation(StandardLocation.CLASS_OUTPUT);
+        File classDir = outputLocation == null ? null : outputLocation.iterator().next();
+        String phase1Key = cache == null ? null : cache.key(options, files.getPhase1Files(), "", classDir);
+        CompilationCache.Entry phase1 = cache == null ? null : cache.load(phase1Key, files.getPhase1Files());
+        boolean ok;
+        List<Diagnostic<? extends JavaFileObject>> student;
+        String signature = "";
+        if (phase1 != null) {
+            log.append("Phase 1 compilation result loaded from cache\n");
+            writeClasses(fm, phase1.getClasses());
+            ok = phase1.isOk();
+            student = phase1.getDiagnostics();
+            signature = phase1.getSignature();
+        }
+        else {
+            DiagnosticCollector<JavaFileObject> phase1Diagnostics = new DiagnosticCollector<>();
+            log.append("Running phase 1 compilation task\n");
+            JavaCompiler.CompilationTask task = compiler.getTask(
+                    null, fm, phase1Diagnostics, options, null, files.getPhase1Files());
+            ApiSignature api = new ApiSignature();
+            if (cache != null && task instanceof JavacTask) {
+                ((JavacTask) task).addTaskListener(api);
+            }
+            ok = task.call();
+            student = phase1Diagnostics.getDiagnostics();
+            if (cache != null) {
+                signature = api.getSignature();
+                cache.store(phase1Key, new CompilationCache.Entry(ok, signature, "", student,
+                        new LinkedHashMap<>(classes)));
+            }
+        }
         log.append(ok ? "Phase 1 compilation successful\n" : "Phase 1 compilation unsuccessful\n");
 
         // If there are errors in the student classes, they have to fix their code first
 
-        List<Diagnostic<? extends JavaFileObject>> student = phase1Diagnostics.getDiagnostics();
-        log.append(String.valueOf(student.size())).append(" diagnostic messages collected during phase 1 compilation\n");
+        log.append(String.valueOf(student.size()))
+                .append(" diagnostic messages collected during phase 1 compilation\n");
         boolean errors = false;
         for (Diagnostic<? extends JavaFileObject> d : student) {
             output.append(d.toString()).append("\n");
             errors = errors || FAILURES.contains(d.getKind());
         }
         if (!ok || errors) {
-            return new TeacherCompileResult(false, output.toString(), log.toString(), student, files);
+            return new TeacherCompileResult(false, output.toString(), log.toString(), student, files, classes);
         }
 
         // If phase 1 worked out okay, now run phase 2
 
-        DiagnosticCollector<JavaFileObject> phase2Diagnostics = new DiagnosticCollector<>();
-        log.append("Running phase 2 compilation task\n");
-        task = compiler.getTask(null, stdFm, phase2Diagnostics, options, null, files.getPhase2Files());
-        ok = task.call();
-        log.append(ok ? "Phase 2 compilation successful\n" : "Phase 2 compilation unsuccessful\n");
-
-        // B) If there are no errors in student classes, but there are in teacher classes,
-        //    their code does not adhere to the specification of the assignment.
-        List<Diagnostic<? extends JavaFileObject>> teacher = phase2Diagnostics.getDiagnostics();
-        log.append(String.valueOf(student.size())).append(" diagnostic messages collected during phase 2 compilation\n");
-        boolean anyErrors = teacher.stream()
-                .anyMatch(d -> files.isTeacherFile(d.getSource()) && FAILURES.contains(d.getKind()));
-        if (anyErrors) {
-            output.append(DISCLAIMER).append("\n");
+        if (files.getTeacherFiles().isEmpty()) {
+            log.append("No teacher sources, skipping phase 2 compilation\n");
+            return new TeacherCompileResult(true, output.toString(), log.toString(), student, files, classes);
+        }
+
+        // Phase 2 only compiles the teacher sources, against the classes produced in phase 1. The source path is
+        // cleared so that javac does not compile the student sources again when it resolves their classes.
+        // Class path and source path options are removed, as javac would otherwise apply them again to the
+        // file manager and discard these locations.
+        List<File> userClassPath = new ArrayList<>();
+        List<String> phase2Options = removePathOptions(options, userClassPath);
+        List<File> classPath = new ArrayList<>();
+        if (!(fm instanceof InMemoryFileManager) && outputLocation != null) {
+            outputLocation.forEach(classPath::add);
+        }
+        Iterable<? extends File> currentClassPath = stdFm.getLocation(StandardLocation.CLASS_PATH);
+        if (!userClassPath.isEmpty()) {
+            classPath.addAll(userClassPath);
+        }
+        else if (currentClassPath != null) {
+            currentClassPath.forEach(classPath::add);
+        }
+        stdFm.setLocation(StandardLocation.CLASS_PATH, classPath);
+        stdFm.setLocation(StandardLocation.SOURCE_PATH, List.of());
+
+        // The result of phase 2 only depends on the teacher sources and the signatures of the phase 1 classes
+        String phase2Key = cache == null ? null : cache.key(options, files.getTeacherFiles(), signature, classDir);
+        CompilationCache.Entry phase2 = cache == null ? null : cache.load(phase2Key, files.getTeacherFiles());
+        String teacherOutput;
+        if (phase2 != null) {
+            log.append("Phase 2 compilation result loaded from cache\n");
+            writeClasses(fm, phase2.getClasses());
+            ok = phase2.isOk();
+            log.append(ok ? "Phase 2 compilation successful\n" : "Phase 2 compilation unsuccessful\n");
+            teacherOutput = phase2.getOutput();
+        }
+        else {
+            Set<String> phase1Classes = new HashSet<>(classes.keySet());
+            DiagnosticCollector<JavaFileObject> phase2Diagnostics = new DiagnosticCollector<>();
+            log.append("Running phase 2 compilation task\n");
+            JavaCompiler.CompilationTask task = compiler.getTask(
+                    null, fm, phase2Diagnostics, phase2Options, null, files.getTeacherFiles());
+            ok = task.call();
+            log.append(ok ? "Phase 2 compilation successful\n" : "Phase 2 compilation unsuccessful\n");
+
+            // B) If there are no errors in student classes, but there are in teacher classes,
+            //    their code does not adhere to the specification of the assignment.
+            List<Diagnostic<? extends JavaFileObject>> teacher = phase2Diagnostics.getDiagnostics();
+            log.append(String.valueOf(teacher.size()))
+                    .append(" diagnostic messages collected during phase 2 compilation\n");
+            StringBuilder errorOutput = new StringBuilder();
             for (Diagnostic<? extends JavaFileObject> d : teacher) {
                 if (files.isTeacherFile(d.getSource()) && FAILURES.contains(d.getKind())) {
-                    output.append(d.toString()).append("\n");
+                    if (errorOutput.length() == 0) {
+                        errorOutput.append(DISCLAIMER).append("\n");
+                    }
+                    errorOutput.append(d.toString()).append("\n");
+                }
+            }
+            teacherOutput = errorOutput.toString();
+            if (cache != null) {
+                Map<String, byte[]> teacherClasses = new LinkedHashMap<>(classes);
+                teacherClasses.keySet().removeAll(phase1Classes);
+                cache.store(phase2Key, new CompilationCache.Entry(ok, "", teacherOutput, List.of(),
+                        teacherClasses));
+            }
+        }
+        if (!teacherOutput.isEmpty()) {
+            output.append(teacherOutput);
+            return new TeacherCompileResult(false, output.toString(), log.toString(), student, files, classes);
+        }
+
+        return new TeacherCompileResult(ok, output.toString(), log.toString(), student, files, classes);
+    }
+
+    /**
+     * Removes the class path and source path options from a list of compiler options
+     * @param options the compiler options
+     * @param classPath a list to which the entries of the removed class path options are added
+     * @return the options without the class path and source path options
+     */
+    static List<String> removePathOptions(List<String> options, List<File> classPath) {
+        List<String> result = new ArrayList<>();
+        for (int i=0; i < options.size(); i++) {
+            String option = options.get(i);
+            String value = null;
+            if (CLASS_PATH_OPTIONS.contains(option) || SOURCE_PATH_OPTIONS.contains(option)) {
+                value = i + 1 < options.size() ? options.get(++i) : "";
+            }
+            else if (option.startsWith("--class-path=") || option.startsWith("--source-path=")) {
+                value = option.substring(option.indexOf('=') + 1);
+                option = option.substring(0, option.indexOf('='));
+            }
+            else {
+                result.add(option);
+                continue;
+            }
+            if (CLASS_PATH_OPTIONS.contains(option)) {
+                for (String entry : value.split(File.pathSeparator)) {
+                    if (!entry.isEmpty()) {
+                        classPath.add(new File(entry));
+                    }
                 }
             }
-            return new TeacherCompileResult(false, output.toString(), log.toString(), student, files);
         }
+        return result;
+    }
 
-        return new TeacherCompileResult(ok, output.toString(), log.toString(), student, files);
+    private static void writeClasses(JavaFileManager fm, Map<String, byte[]> classes) throws IOException {
+        for (Map.Entry<String, byte[]> e : classes.entrySet()) {
+            JavaFileObject jfo = fm.getJavaFileForOutput(StandardLocation.CLASS_OUTPUT, e.getKey(),
+                    JavaFileObject.Kind.CLASS, null);
+            try (OutputStream out = jfo.openOutputStream()) {
+                out.write(e.getValue());
+            }
+        }
     }
 
 }
@@ -47,7 +47,19 @@ public class TeacherAwareDiagnostic {
     }
 
     public String toGenericLinterFeedback() {
+        return toGenericLinterFeedback("");
+    }
+
+    /**
+     * Formats the diagnostic as generic linter feedback
+     * @param basePrefix a prefix that is removed from the file name, such as the working directory of a compile job
+     * @return the diagnostic formatted as generic linter feedback
+     */
+    public String toGenericLinterFeedback(String basePrefix) {
         String file = diagnostic.getSource().getName();
+        if (!basePrefix.isEmpty() && file.startsWith(basePrefix)) {
+            file = file.substring(basePrefix.length());
+        }
         if  (file.startsWith("./")) {
             file = file.substring(2);
         }
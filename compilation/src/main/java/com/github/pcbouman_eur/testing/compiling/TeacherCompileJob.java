@@ -87,11 +87,13 @@ public class TeacherCompileJob {
 
         private final List<JavaFileObject> phase1;
         private final List<JavaFileObject> phase2;
+        private final List<JavaFileObject> teacherList;
         private final Set<JavaFileObject> teacher;
 
         private TeacherAwareFiles(Set<Path> phase1Files, Set<Path> teacherFiles, StandardJavaFileManager fm) {
             this.phase1 = new ArrayList<>();
             this.phase2 = new ArrayList<>();
+            this.teacherList = new ArrayList<>();
             this.teacher = new LinkedHashSet<>();
 
             for (JavaFileObject jfo : fm.getJavaFileObjectsFromPaths(phase1Files)) {
@@ -100,6 +102,7 @@ public class TeacherCompileJob {
             }
             for (JavaFileObject jfo : fm.getJavaFileObjectsFromPaths(teacherFiles)) {
                 phase2.add(jfo);
+                teacherList.add(jfo);
                 teacher.add(jfo);
             }
         }
@@ -112,6 +115,10 @@ public class TeacherCompileJob {
             return Collections.unmodifiableList(phase2);
         }
 
+        public List<JavaFileObject> getTeacherFiles() {
+            return Collections.unmodifiableList(teacherList);
+        }
+
         public boolean isTeacherFile(JavaFileObject jfo) {
             return teacher.contains(jfo);
         }
@@ -18,7 +18,9 @@ package com.github.pcbouman_eur.testing.compiling;
 import javax.tools.Diagnostic;
 import javax.tools.JavaFileObject;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 public class TeacherCompileResult {
 
@@ -26,10 +28,19 @@ public class TeacherCompileResult {
     private final String output, log;
 
     private final List<TeacherAwareDiagnostic> diagnostics;
+    private final Map<String, byte[]> classes;
 
-    public TeacherCompileResult(boolean ok, String output, String log, List<Diagnostic<? extends JavaFileObject>> diagnostics,
+    public TeacherCompileResult(boolean ok, String output, String log,
+                                List<Diagnostic<? extends JavaFileObject>> diagnostics,
                                 TeacherCompileJob.TeacherAwareFiles files) {
+        this(ok, output, log, diagnostics, files, Collections.emptyMap());
+    }
+
+    public TeacherCompileResult(boolean ok, String output, String log,
+                                List<Diagnostic<? extends JavaFileObject>> diagnostics,
+                                TeacherCompileJob.TeacherAwareFiles files, Map<String, byte[]> classes) {
         this.ok = ok;
+        this.classes = classes;
         this.output = output;
         this.log = log;
         this.diagnostics = new ArrayList<>();
@@ -54,4 +65,22 @@ public class TeacherCompileResult {
     public List<TeacherAwareDiagnostic> getDiagnostics() {
         return diagnostics;
     }
+
+    /**
+     * Provides the class files that were kept in memory during compilation. This is empty if the class files
+     * were written to a class directory directly, without a compilation cache.
+     * @return the class files compiled in memory, indexed by their binary names
+     */
+    public Map<String, byte[]> getClasses() {
+        return classes;
+    }
+
+    /**
+     * Creates a class loader that loads the classes that were compiled in memory
+     * @param parent the class loader used to load all other classes
+     * @return a class loader for the compiled classes
+     */
+    public ClassLoader createClassLoader(ClassLoader parent) {
+        return new InMemoryClassLoader(classes, parent);
+    }
 }
@@ -0,0 +1,263 @@
+/* Copyright 2025 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.github.pcbouman_eur.testing.compiling;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestTeacherAwareCompiler {
+
+    @Test
+    public void inMemoryCompilationTest(@TempDir Path dir) throws Exception {
+        Path student = write(dir.resolve("student"), "Adder.java",
+                "public class Adder { public static int add(int a, int b) { return a + b; } }");
+        Path teacher = write(dir.resolve("teacher"), "AdderCheck.java",
+                "public class AdderCheck { public static int check() { return Adder.add(2, 3); } }");
+
+        TeacherCompileJob job = TeacherCompileJob.forSources(List.of(), List.of(student), List.of(teacher));
+        TeacherCompileResult result = new TeacherAwareCompiler(job, List.of()).compileInMemory(true);
+
+        assertTrue(result.isOk(), result.getOutput());
+        assertTrue(result.getClasses().containsKey("Adder"), "The student class should be kept in memory");
+        assertTrue(result.getClasses().containsKey("AdderCheck"), "The teacher class should be kept in memory");
+        try (var files = Files.list(dir)) {
+            assertFalse(files.anyMatch(p -> p.toString().endsWith(".class")), "No class files should be written");
+        }
+
+        ClassLoader cl = result.createClassLoader(getClass().getClassLoader());
+        Method check = cl.loadClass("AdderCheck").getMethod("check");
+        assertEquals(5, check.invoke(null));
+    }
+
+    @Test
+    public void staleClassFilesTest(@TempDir Path dir) throws Exception {
+        Path stale = write(dir.resolve("stale"), "Adder.java",
+                "public class Adder { public static int add(int a, int b) { return a - b; } }");
+        Path staleClasses = Files.createDirectories(dir.resolve("classes"));
+        TeacherCompileJob staleJob = TeacherCompileJob.forSources(List.of(), List.of(stale), List.of());
+        assertTrue(new TeacherAwareCompiler(staleJob, List.of()).compile(staleClasses.toFile(), true).isOk());
+
+        Path student = write(dir.resolve("student"), "Adder.java",
+                "public class Adder { public static int add(int a, int b) { return a + b; } }");
+        Path teacher = write(dir.resolve("teacher"), "AdderCheck.java",
+                "public class AdderCheck { public static int check() { return Adder.add(2, 3); } }");
+        TeacherCompileJob job = TeacherCompileJob.forSources(List.of(), List.of(student), List.of(teacher));
+        TeacherCompileResult result = new TeacherAwareCompiler(job, List.of()).compileInMemory(true);
+
+        try (URLClassLoader parent = new URLClassLoader(new URL[] {staleClasses.toUri().toURL()},
+                getClass().getClassLoader())) {
+            ClassLoader cl = result.createClassLoader(parent);
+            assertEquals(cl, cl.loadClass("Adder").getClassLoader(), "Compiled classes are not loaded by the parent");
+            assertEquals(5, cl.loadClass("AdderCheck").getMethod("check").invoke(null));
+        }
+    }
+
+    @Test
+    public void inMemoryTeacherErrorTest(@TempDir Path dir) throws Exception {
+        Path student = write(dir.resolve("student"), "Adder.java",
+                "public class Adder { public static int plus(int a, int b) { return a + b; } }");
+        Path teacher = write(dir.resolve("teacher"), "AdderCheck.java",
+                "public class AdderCheck { public static int check() { return Adder.add(2, 3); } }");
+
+        TeacherCompileJob job = TeacherCompileJob.forSources(List.of(), List.of(student), List.of(teacher));
+        TeacherCompileResult result = new TeacherAwareCompiler(job, List.of()).compileInMemory(true);
+
+        assertFalse(result.isOk(), "Compilation of the teacher code should fail");
+        assertTrue(result.getOutput().contains("SPECIFICATION"), "The output should contain the disclaimer");
+    }
+
+    @Test
+    public void classDirCompilationTest(@TempDir Path dir) throws Exception {
+        Path student = write(dir.resolve("student"), "Adder.java",
+                "public class Adder { public static int add(int a, int b) { return a + b; } }");
+        Path teacher = write(dir.resolve("teacher"), "AdderCheck.java",
+                "public class AdderCheck { public static int check() { return Adder.add(2, 3); } }");
+        Path classDir = Files.createDirectories(dir.resolve("classes"));
+
+        TeacherCompileJob job = TeacherCompileJob.forSources(List.of(), List.of(student), List.of(teacher));
+        TeacherCompileResult result = new TeacherAwareCompiler(job, List.of()).compile(classDir.toFile(), true);
+
+        assertTrue(result.isOk(), result.getOutput());
+        assertTrue(Files.exists(classDir.resolve("Adder.class")), "The student class should be written");
+        assertTrue(Files.exists(classDir.resolve("AdderCheck.class")), "The teacher class should be written");
+    }
+
+    @Test
+    public void classPathOptionTest(@TempDir Path dir) throws Exception {
+        Path lib = Files.createDirectories(dir.resolve("lib"));
+        Path helper = write(dir.resolve("helper"), "Helper.java",
+                "public class Helper { public static int two() { return 2; } }");
+        TeacherCompileJob helperJob = TeacherCompileJob.forSources(List.of(), List.of(helper), List.of());
+        assertTrue(new TeacherAwareCompiler(helperJob, List.of()).compile(lib.toFile(), true).isOk());
+
+        Path student = write(dir.resolve("student"), "Adder.java",
+                "public class Adder { public static int add(int a, int b) { return a + b; } }");
+        Path teacher = write(dir.resolve("teacher"), "AdderCheck.java",
+                "public class AdderCheck { public static int check() { return Adder.add(Helper.two(), 3); } }");
+        Path classDir = Files.createDirectories(dir.resolve("classes"));
+        TeacherCompileJob job = TeacherCompileJob.forSources(List.of(), List.of(student), List.of(teacher));
+        List<String> options = List.of("-cp", lib.toString());
+
+        TeacherCompileResult result = new TeacherAwareCompiler(job, options).compile(classDir.toFile(), true);
+        assertTrue(result.isOk(), result.getOutput());
+        assertTrue(Files.exists(classDir.resolve("AdderCheck.class")), "The teacher class should be written");
+
+        result = new TeacherAwareCompiler(job, options).compileInMemory(true);
+        assertTrue(result.isOk(), result.getOutput());
+    }
+
+    @Test
+    public void noTeacherSourcesTest(@TempDir Path dir) throws Exception {
+        Path student = write(dir.resolve("student"), "Adder.java",
+                "public class Adder { public static int add(int a, int b) { return a + b; } }");
+
+        TeacherCompileJob job = TeacherCompileJob.forSources(List.of(), List.of(student), List.of());
+        TeacherCompileResult result = new TeacherAwareCompiler(job, List.of()).compileInMemory(true);
+
+        assertTrue(result.isOk(), result.getOutput());
+        assertTrue(result.getLog().contains("skipping phase 2"), "Phase 2 should be skipped");
+        assertEquals(1, result.getClasses().size(), "Only the student class should be compiled");
+    }
+
+    @Test
+    public void compilationCacheTest(@TempDir Path dir) throws Exception {
+        CompilationCache cache = new CompilationCache(dir.resolve("cache"));
+        Path teacher = write(dir.resolve("teacher"), "AdderCheck.java",
+                "public class AdderCheck { public static int check() { return Adder.add(2, 3); } }");
+        Path student = dir.resolve("student");
+
+        write(student, "Adder.java", "public class Adder { public static int add(int a, int b) { return a + b; } }");
+        TeacherCompileResult first = compile(student, teacher, cache);
+        assertTrue(first.isOk(), first.getOutput());
+        assertFalse(first.getLog().contains("from cache"), "Nothing should be cached yet");
+
+        TeacherCompileResult second = compile(student, teacher, cache);
+        assertTrue(second.getLog().contains("Phase 1 compilation result loaded from cache"), second.getLog());
+        assertTrue(second.getLog().contains("Phase 2 compilation result loaded from cache"), second.getLog());
+        assertTrue(second.getLog().contains("Phase 2 compilation successful"), second.getLog());
+        assertEquals(5, check(second));
+
+        // The implementation changes, but the signatures stay the same
+        write(student, "Adder.java",
+                "public class Adder { public static int add(int a, int b) { return b + a + 1; } }");
+        TeacherCompileResult third = compile(student, teacher, cache);
+        assertTrue(third.getLog().contains("Running phase 1 compilation task"), third.getLog());
+        assertTrue(third.getLog().contains("Phase 2 compilation result loaded from cache"), third.getLog());
+        assertEquals(6, check(third));
+
+        // The signature changes, so the teacher code has to be compiled again
+        write(student, "Adder.java", "public class Adder { public static int add(long a, int b) { return 0; } }");
+        TeacherCompileResult fourth = compile(student, teacher, cache);
+        assertTrue(fourth.getLog().contains("Running phase 2 compilation task"), fourth.getLog());
+        assertEquals(0, check(fourth));
+    }
+
+    @Test
+    public void classPathCacheTest(@TempDir Path dir) throws Exception {
+        CompilationCache cache = new CompilationCache(dir.resolve("cache"));
+        Path lib = Files.createDirectories(dir.resolve("lib"));
+        Path helper = dir.resolve("helper");
+        write(helper, "Helper.java", "public class Helper { public static int two() { return 2; } }");
+        TeacherCompileJob helperJob = TeacherCompileJob.forSources(List.of(), List.of(helper), List.of());
+        assertTrue(new TeacherAwareCompiler(helperJob, List.of()).compile(lib.toFile(), true).isOk());
+
+        Path student = write(dir.resolve("student"), "Adder.java",
+                "public class Adder { public static int add(int a, int b) { return a + b; } }");
+        Path teacher = write(dir.resolve("teacher"), "AdderCheck.java",
+                "public class AdderCheck { public static int check() { return Adder.add(Helper.two(), 3); } }");
+        TeacherCompileJob job = TeacherCompileJob.forSources(List.of(), List.of(student), List.of(teacher));
+        List<String> options = List.of("-cp", lib.toString());
+        assertTrue(new TeacherAwareCompiler(job, options, cache).compileInMemory(true).isOk());
+        TeacherCompileResult cached = new TeacherAwareCompiler(job, options, cache).compileInMemory(true);
+        assertTrue(cached.getLog().contains("Phase 2 compilation result loaded from cache"), cached.getLog());
+
+        // The class on the class path changes, so the cached results can no longer be used
+        write(helper, "Helper.java", "public class Helper { public static long twice(int x) { return 2L * x; } }");
+        assertTrue(new TeacherAwareCompiler(helperJob, List.of()).compile(lib.toFile(), true).isOk());
+        TeacherCompileResult changed = new TeacherAwareCompiler(job, options, cache).compileInMemory(true);
+        assertTrue(changed.getLog().contains("Running phase 2 compilation task"), changed.getLog());
+        assertFalse(changed.isOk(), "The teacher code should no longer compile against the changed class");
+    }
+
+    @Test
+    public void annotationCacheTest(@TempDir Path dir) throws Exception {
+        CompilationCache cache = new CompilationCache(dir.resolve("cache"));
+        Path student = dir.resolve("student");
+        write(student, "Adder.java", "public class Adder { public static int add(int a, int b) { return a + b; } }");
+        Path teacher = write(dir.resolve("teacher"), "AdderCheck.java",
+                "public class AdderCheck { public static int check() { return Adder.add(2, 3); } }");
+        TeacherCompileJob job = TeacherCompileJob.forSources(List.of(), List.of(student), List.of(teacher));
+        List<String> options = List.of("-Xlint:deprecation", "-Werror");
+        assertTrue(new TeacherAwareCompiler(job, options, cache).compileInMemory(true).isOk());
+
+        // Only an annotation changes, which turns the use of the method by the teacher code into an error
+        write(student, "Adder.java",
+                "public class Adder { @Deprecated public static int add(int a, int b) { return a + b; } }");
+        TeacherCompileResult changed = new TeacherAwareCompiler(job, options, cache).compileInMemory(true);
+        assertTrue(changed.getLog().contains("Running phase 2 compilation task"), changed.getLog());
+        assertFalse(changed.isOk(), "The use of the deprecated method should be reported");
+    }
+
+    @Test
+    public void cachedErrorsTest(@TempDir Path dir) throws Exception {
+        CompilationCache cache = new CompilationCache(dir.resolve("cache"));
+        Path teacher = write(dir.resolve("teacher"), "AdderCheck.java",
+                "public class AdderCheck { public static int check() { return Adder.add(2, 3); } }");
+        Path student = dir.resolve("student");
+
+        write(student, "Adder.java", "public class Adder { public static int add(int a, int b) { return \"\"; } }");
+        TeacherCompileResult first = compile(student, teacher, cache);
+        TeacherCompileResult second = compile(student, teacher, cache);
+        assertFalse(second.isOk(), "Cached compilation errors should make the compilation fail");
+        assertEquals(first.getOutput(), second.getOutput());
+        assertEquals(first.getDiagnostics().get(0).toGenericLinterFeedback(),
+                second.getDiagnostics().get(0).toGenericLinterFeedback());
+
+        write(student, "Adder.java", "public class Adder { public static int plus(int a, int b) { return a + b; } }");
+        first = compile(student, teacher, cache);
+        second = compile(student, teacher, cache);
+        assertFalse(second.isOk(), "Cached errors in teacher code should make the compilation fail");
+        assertEquals(first.getOutput(), second.getOutput());
+    }
+
+    private static TeacherCompileResult compile(Path student, Path teacher, CompilationCache cache)
+            throws IOException {
+        TeacherCompileJob job = TeacherCompileJob.forSources(List.of(), List.of(student), List.of(teacher));
+        return new TeacherAwareCompiler(job, List.of(), cache).compileInMemory(true);
+    }
+
+    private int check(TeacherCompileResult result) throws Exception {
+        ClassLoader cl = result.createClassLoader(getClass().getClassLoader());
+        return (int) cl.loadClass("AdderCheck").getMethod("check").invoke(null);
+    }
+
+    private static Path write(Path dir, String name, String source) throws IOException {
+        Files.createDirectories(dir);
+        return Files.writeString(dir.resolve(name), source);
+    }
+}
@@ -19,53 +19,110 @@ import com.github.pcbouman_eur.testing.wrapper.WrapperFactory;
 import org.junit.jupiter.api.extension.ExtensionContext;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
+/**
+ * <p>Removes the frames of the testing framework from stack traces, so that students only see the frames of their
+ * own code, followed by a single frame that refers to the test case.</p>
+ *
+ * <p>The prefixes are compiled into a sorted array when the sanitizer is created, so that checking a frame takes a
+ * hash lookup and a binary search. Since exceptions thrown in loops tend to have identical stack traces, the most
+ * recently sanitized traces are cached.</p>
+ */
 public final class StackTraceSanitizer {
 
-    private static final List<String> DEFAULT_PREFIXES = List.of("sun.reflect", "jdk.internal.reflect");
+    private static final List<String> DEFAULT_PREFIXES = List.of("sun.reflect", "jdk.internal.reflect",
+            "java.lang.invoke.", WrapperFactory.class.getName() + "$");
     private static final Set<String> DEFAULT_CLASSNAMES = Set.of(WrapperFactory.class.getName());
+    // Classes generated by the WrapperFactory are named after the target interface, followed by this marker
+    private static final List<String> DEFAULT_MARKERS = List.of("$$Wrapper$");
 
-    private final List<String> prefixes;
+    private static final int CACHE_SIZE = 64;
+
+    private final String[] prefixes;
     private final Set<String> classNames;
+    private final List<String> markers;
+
+    private final Map<List<StackTraceElement>, StackTraceElement[]> cache = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<StackTraceElement>, StackTraceElement[]> e) {
+                    return size() > CACHE_SIZE;
+                }
+            });
 
     public StackTraceSanitizer() {
         super();
-        this.prefixes = DEFAULT_PREFIXES;
+        this.prefixes = compilePrefixes(DEFAULT_PREFIXES);
         this.classNames = DEFAULT_CLASSNAMES;
+        this.markers = DEFAULT_MARKERS;
     }
 
     public StackTraceSanitizer(ExtensionContext ctx) {
         super();
-        this.prefixes = DEFAULT_PREFIXES;
+        this.prefixes = compilePrefixes(DEFAULT_PREFIXES);
         Set<String> classNames = new HashSet<>(DEFAULT_CLASSNAMES);
         classNames.add(ctx.getRequiredTestClass().getName());
         ctx.getTestClass().ifPresent(clz -> classNames.add(clz.getName()));
         this.classNames = Collections.unmodifiableSet(classNames);
+        this.markers = DEFAULT_MARKERS;
     }
 
     public StackTraceSanitizer(Collection<String> prefixes, Collection<String> postFixes,
                               Collection<String> classNames) {
         super();
-        this.prefixes = new ArrayList<>(prefixes);
+        this.prefixes = compilePrefixes(prefixes);
         this.classNames = new HashSet<>(classNames);
+        this.markers = Collections.emptyList();
     }
 
 
     public StackTraceElement[] sanitize(StackTraceElement[] st) {
-        List<StackTraceElement> result =
-                Arrays.stream(st)
-                        .takeWhile(this::showTraceElement)
-                        .collect(Collectors.toList());
-        result.add(new StackTraceElement("TeacherTestClass", "testCaseMethod", null, -2));
-        return result.toArray(new StackTraceElement[0]);
+        StackTraceElement[] result = cache.get(Arrays.asList(st));
+        if (result == null) {
+            int length = 0;
+            while (length < st.length && showTraceElement(st[length])) {
+                length++;
+            }
+            result = Arrays.copyOf(st, length + 1);
+            result[length] = new StackTraceElement("TeacherTestClass", "testCaseMethod", null, -2);
+            cache.put(List.of(st), result);
+        }
+        return result.clone();
     }
 
     private boolean showTraceElement(StackTraceElement st) {
         String className = st.getClassName();
-        boolean result = !classNames.contains(className) &&
-                !prefixes.stream().anyMatch(pref -> className.startsWith(pref));
-        return result;
+        if (classNames.contains(className) || matchesPrefix(className)) {
+            return false;
+        }
+        for (String marker : markers) {
+            if (className.contains(marker)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matchesPrefix(String className) {
+        // As no prefix starts with another prefix, the only candidate is the greatest prefix that is not greater
+        int index = Arrays.binarySearch(prefixes, className);
+        if (index >= 0) {
+            return true;
+        }
+        int candidate = -index - 2;
+        return candidate >= 0 && className.startsWith(prefixes[candidate]);
+    }
+
+    private static String[] compilePrefixes(Collection<String> prefixes) {
+        List<String> sorted = new ArrayList<>(new TreeSet<>(prefixes));
+        List<String> result = new ArrayList<>();
+        for (String prefix : sorted) {
+            // Prefixes that start with a shorter prefix are redundant, and directly follow it in the sorted order
+            if (result.isEmpty() || !prefix.startsWith(result.get(result.size() - 1))) {
+                result.add(prefix);
+            }
+        }
+        return result.toArray(new String[0]);
     }
 
 }
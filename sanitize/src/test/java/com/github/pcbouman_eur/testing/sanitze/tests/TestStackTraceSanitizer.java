@@ -0,0 +1,66 @@
+/* Copyright 2022 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.github.pcbouman_eur.testing.sanitze.tests;
+
+import com.github.pcbouman_eur.testing.sanitze.StackTraceSanitizer;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestStackTraceSanitizer {
+
+    @Test
+    public void testPrefixes() {
+        StackTraceSanitizer sts = new StackTraceSanitizer(List.of("org.b", "org.a", "org.a.b", "com"), List.of(),
+                List.of("student.Hidden"));
+        StackTraceElement[] trace = {
+                frame("student.Visible"), frame("org.Visible"), frame("org.c.Visible"), frame("org.a.b.Hidden"),
+                frame("student.Visible")
+        };
+        StackTraceElement[] result = sts.sanitize(trace);
+        assertEquals(4, result.length, "Frames up to the first hidden frame are kept");
+        assertEquals("TeacherTestClass", result[3].getClassName(), "A frame for the test case is added");
+        assertEquals(1, sts.sanitize(new StackTraceElement[] {frame("com.Hidden")}).length,
+                "Frames with a prefix are hidden");
+        assertEquals(1, sts.sanitize(new StackTraceElement[] {frame("student.Hidden")}).length,
+                "Frames of the class names are hidden");
+        assertEquals(2, sts.sanitize(new StackTraceElement[] {frame("co.Visible")}).length,
+                "Frames that do not start with a prefix are kept");
+    }
+
+    @Test
+    public void testCachedTraces() {
+        StackTraceSanitizer sts = new StackTraceSanitizer();
+        StackTraceElement[] trace = {
+                frame("student.Visible"), frame("java.lang.invoke.LambdaForm"), frame("student.Visible")
+        };
+        StackTraceElement[] first = sts.sanitize(trace);
+        first[0] = frame("changed.Frame");
+        StackTraceElement[] second = sts.sanitize(trace.clone());
+        assertEquals(2, second.length, "Method handle frames are hidden");
+        assertEquals("student.Visible", second[0].getClassName(), "Cached results are not affected by callers");
+        assertEquals(2, sts.sanitize(new StackTraceElement[] {
+                frame("student.Visible"), frame("student.Iface$$Wrapper$1")}).length,
+                "Frames of generated wrapper classes are hidden");
+    }
+
+    private static StackTraceElement frame(String className) {
+        return new StackTraceElement(className, "method", "File.java", 1);
+    }
+
+}
@@ -45,6 +45,8 @@ public class GenerateSoftAssertMojo extends AbstractMojo {
 
     private static Logger log = LoggerFactory.getLogger(GenerateSoftAssertMojo.class);
 
+    private static final String CONTEXT_CLASS = "AssertionContext";
+
     @Parameter(defaultValue = "${project.build.directory}/generated-sources/generate-soft-assert", required = true)
     private File outputDirectory;
 
@@ -116,7 +118,9 @@ public class GenerateSoftAssertMojo extends AbstractMojo {
         sb.append("\t");
         sb.append(buildHeader(m));
         sb.append(" {\n");
-        sb.append("\t\tif ("+hardToSoftClass+".isHardAssert()) {\n\t\t\t");
+        // The context is looked up once, and is used for reporting the outcome of the assertion
+        sb.append("\t\t"+CONTEXT_CLASS+" ctx = "+hardToSoftClass+".getSoftContext();\n");
+        sb.append("\t\tif (ctx == null) {\n\t\t\t");
         if (!isVoid) {
             sb.append("return ");
         }
@@ -129,19 +133,29 @@ public class GenerateSoftAssertMojo extends AbstractMojo {
         if (!isVoid) {
             sb.append("\t\t"+m.getGenericReturnType().getTypeName()+" result = null;\n");
         }
-        sb.append("\t\tString msg = ");
-        sb.append(buildMessageExpression(m));
-        sb.append(";\n");
+        // A message supplier is called once, when the outcome of the assertion is reported
+        String supplier = getMessageSupplier(m);
+        String msg = "msg";
+        if (supplier == null) {
+            sb.append("\t\tString msg = ");
+            sb.append(buildMessageExpression(m));
+            sb.append(";\n");
+        }
+        else {
+            msg = hardToSoftClass+".getMessage("+supplier+")";
+        }
         sb.append("\t\ttry {\n\t\t\t");
         if (!isVoid) {
             sb.append("result = ");
         }
         sb.append(delegate);
         sb.append(";\n\t\t\t");
-        sb.append(hardToSoftClass+".reportSuccess(msg);\n");
+        sb.append("ctx.reportSuccess("+(supplier == null ? msg : supplier)+");\n");
+        // A failure that is rejected because the context has already ended is thrown as a hard assertion
         sb.append("\t\t} catch (MultipleFailuresError mfe) {\n\t\t\t");
-        sb.append(hardToSoftClass+".reportMultipleFailures(mfe, msg);\n\t\t} catch (AssertionFailedError afe) {\n\t\t\t");
-        sb.append(hardToSoftClass+".reportFailure(afe, msg);\n\t\t}\n\t");
+        sb.append("if (!ctx.reportMultipleFailures(mfe, "+msg+")) {\n\t\t\t\tthrow mfe;\n\t\t\t}\n");
+        sb.append("\t\t} catch (AssertionFailedError afe) {\n\t\t\t");
+        sb.append("if (!ctx.reportFailure(afe, "+msg+")) {\n\t\t\t\tthrow afe;\n\t\t\t}\n\t\t}\n\t");
         if (!isVoid) {
             sb.append("\treturn result;\n\t");
         }
@@ -156,11 +170,19 @@ public class GenerateSoftAssertMojo extends AbstractMojo {
             if (lastParam.getType().equals(String.class)) {
                 return lastParam.getName();
             }
+        }
+        return "\"Test without a description that uses " + m.getName() + "()\"";
+    }
+
+    private static String getMessageSupplier(Method m) {
+        java.lang.reflect.Parameter[] params = m.getParameters();
+        if (params.length > 0) {
+            java.lang.reflect.Parameter lastParam = params[params.length - 1];
             if (lastParam.getType().equals(Supplier.class)) {
-                return lastParam.getName() + ".get()";
+                return lastParam.getName();
             }
         }
-        return "\"Test without a description that uses " + m.getName() + "()\"";
+        return null;
     }
 
     private static String buildDelegateCall(Method m, String classToCall) {
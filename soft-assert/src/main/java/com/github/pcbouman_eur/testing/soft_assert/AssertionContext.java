@@ -19,15 +19,29 @@ import com.github.pcbouman_eur.testing.sanitze.StackTraceSanitizer;
 import org.opentest4j.AssertionFailedError;
 import org.opentest4j.MultipleFailuresError;
 
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
 /**
  * Class that provides a contextual container that can be used to capture the successes and failures of unit tests
  * that uses soft assertions, i.e. assertions that to do not terminate the tests. This is useful for functional
  * testing using basic assertions.
+ *
+ * Assertions reported by the thread that created the context are stored directly. Assertions reported by other
+ * threads, for example threads started by a test, are stored in a separate buffer per thread, so these threads do
+ * not contend with each other. The buffers are merged when the context ends. Every buffer is guarded by its own
+ * lock, which is only contended while the context ends. Once the context has ended, assertions of other threads are
+ * rejected, so that the caller can treat them as hard assertions instead of losing them.
  */
 
 final class AssertionContext {
 
     private final SoftAssertionData data;
+    private final Thread owner;
+    private final Queue<Buffer> buffers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Buffer> threadBuffers;
+    private volatile boolean ended;
     private final SoftAssertionTextLayout layout;
 
     private final boolean allowNoAssertions;
@@ -49,8 +63,34 @@ final class AssertionContext {
     public AssertionContext(int storageLimit, int displayLimit, boolean displayBooleanDetails,
                             boolean allowNoAssertions, boolean immediateExceptions, int stacktraceDisplayLimit,
                             StackTraceSanitizer sanitizer) {
-        this.data = new SoftAssertionData(storageLimit);
-        this.layout = new SoftAssertionTextLayout(displayLimit, displayBooleanDetails, stacktraceDisplayLimit, sanitizer);
+        this(new SoftAssertionData(storageLimit), displayLimit, displayBooleanDetails, allowNoAssertions,
+                immediateExceptions, stacktraceDisplayLimit, sanitizer);
+    }
+
+    /**
+     * Sets up a AssertionContext that stores its assertions in the given data object. Assertions of other threads
+     * are stored in buffers with the same storage settings as this data object.
+     *
+     * @param data the object in which the assertions of this context are stored
+     * @param displayLimit the maximum number of failed assertion details to display per unique message
+     * @param displayBooleanDetails whether to output details of boolean assertions in the final report
+     * @param allowNoAssertions whether it is allowed to have a test perform no assertions at all
+     * @param immediateExceptions whether Exceptions should be thrown directly after processing
+     * @param stacktraceDisplayLimit limit on number of stack trace lines, -1 means no limit
+     * @param sanitizer StackTraceSanitizer to apply to stack traces before displaying theme
+     */
+    public AssertionContext(SoftAssertionData data, int displayLimit, boolean displayBooleanDetails,
+                            boolean allowNoAssertions, boolean immediateExceptions, int stacktraceDisplayLimit,
+                            StackTraceSanitizer sanitizer) {
+        this.data = data;
+        this.owner = Thread.currentThread();
+        this.threadBuffers = ThreadLocal.withInitial(() -> {
+            Buffer buffer = new Buffer(data.createBuffer());
+            buffers.add(buffer);
+            return buffer;
+        });
+        this.layout = new SoftAssertionTextLayout(displayLimit, displayBooleanDetails, stacktraceDisplayLimit,
+                sanitizer);
         this.allowNoAssertions = allowNoAssertions;
         this.immediateExceptions = immediateExceptions;
     }
@@ -58,26 +98,72 @@ final class AssertionContext {
     /**
      * Used to report a successful assertion
      * @param msg the message associated with the assertion
+     * @return false if the assertion was rejected because the context has ended
+     */
+    public boolean reportSuccess(String msg) {
+        if (Thread.currentThread() == owner) {
+            data.reportSuccess(msg);
+            return true;
+        }
+        Buffer buffer = threadBuffers.get();
+        synchronized (buffer) {
+            if (ended) {
+                return false;
+            }
+            buffer.data.reportSuccess(msg);
+        }
+        return true;
+    }
+
+    /**
+     * Used to report a successful assertion of which the message is provided by a supplier. The supplier is
+     * called immediately.
+     * @param msgSupplier the supplier of the message associated with the assertion
+     * @return false if the assertion was rejected because the context has ended
      */
-    public void reportSuccess(String msg) {
-        data.reportSuccess(msg);
+    public boolean reportSuccess(Supplier<String> msgSupplier) {
+        return reportSuccess(msgSupplier == null ? null : msgSupplier.get());
     }
 
     /**
      * Used to report a failed assertion
      * @param afe the exception produced by the failed assertion
      * @param msg the message associated with the assertion
+     * @return false if the assertion was rejected because the context has ended
      */
-    public void reportFailure(AssertionFailedError afe, String msg) {
-        data.reportFailure(afe, msg);
+    public boolean reportFailure(AssertionFailedError afe, String msg) {
+        if (Thread.currentThread() == owner) {
+            data.reportFailure(afe, msg);
+            return true;
+        }
+        Buffer buffer = threadBuffers.get();
+        synchronized (buffer) {
+            if (ended) {
+                return false;
+            }
+            buffer.data.reportFailure(afe, msg);
+        }
+        return true;
     }
 
     /**
      * Used to report an exception that occurred during test execution
      * @param t the exception that occurred
+     * @return false if the exception was rejected because the context has ended
      */
-    public void reportException(Throwable t) {
-        data.reportException(t);
+    public boolean reportException(Throwable t) {
+        if (Thread.currentThread() == owner) {
+            data.reportException(t);
+            return true;
+        }
+        Buffer buffer = threadBuffers.get();
+        synchronized (buffer) {
+            if (ended) {
+                return false;
+            }
+            buffer.data.reportException(t);
+        }
+        return true;
     }
 
     /**
@@ -87,9 +173,21 @@ final class AssertionContext {
      *
      * @param mfe the MultipleFailuresError that contains multiple failures
      * @param msg the message associated with the assertion.
+     * @return false if the failures were rejected because the context has ended
      */
-    public void reportMultipleFailures(MultipleFailuresError mfe, String msg) {
-        data.reportMultipleFailures(mfe, msg);
+    public boolean reportMultipleFailures(MultipleFailuresError mfe, String msg) {
+        if (Thread.currentThread() == owner) {
+            data.reportMultipleFailures(mfe, msg);
+            return true;
+        }
+        Buffer buffer = threadBuffers.get();
+        synchronized (buffer) {
+            if (ended) {
+                return false;
+            }
+            buffer.data.reportMultipleFailures(mfe, msg);
+        }
+        return true;
     }
 
     /**
@@ -107,6 +205,14 @@ final class AssertionContext {
      * @return if no failures occurred, an object containing information on the successful assertions is returned
      */
     public SoftAssertionResult endContext() throws MultipleFailuresError, NoAssertionsPerformedException {
+        // A thread that creates its buffer after the buffers are drained sees that the context has ended
+        ended = true;
+        Buffer buffer;
+        while ((buffer = buffers.poll()) != null) {
+            synchronized (buffer) {
+                data.merge(buffer.data);
+            }
+        }
         if (!allowNoAssertions && !data.anyAssertions()) {
             throw new NoAssertionsPerformedException();
         }
@@ -125,4 +231,25 @@ final class AssertionContext {
         return immediateExceptions;
     }
 
+    /**
+     * Returns whether this context has ended. Threads that inherited this context should no longer use it
+     * once it has ended.
+     * @return whether this context has ended
+     */
+    public boolean isEnded() {
+        return ended;
+    }
+
+    /**
+     * The assertions of a thread other than the owner, guarded by the lock of this object
+     */
+    private static final class Buffer {
+
+        private final SoftAssertionData data;
+
+        private Buffer(SoftAssertionData data) {
+            this.data = data;
+        }
+    }
+
 }
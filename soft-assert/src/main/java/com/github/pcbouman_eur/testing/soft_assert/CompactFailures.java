@@ -0,0 +1,150 @@
+/* Copyright 2022 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.github.pcbouman_eur.testing.soft_assert;
+
+import org.opentest4j.AssertionFailedError;
+import org.opentest4j.ValueWrapper;
+
+import java.util.Set;
+
+/**
+ * <p>Helper class that turns failed assertions into compact records that are cheap to keep in memory.</p>
+ *
+ * <p>A compact record is an AssertionFailedError without a cause that only holds the string representations of the
+ * expected and actual values, with capped lengths, and a stack trace that only contains the frames of the test code
+ * just below the assertion. The full stack trace of the record is never filled in. Instead, a slice of bounded depth is
+ * captured with a StackWalker at the moment the record is stored. This way, large values produced by student code can
+ * be garbage collected after the assertion failed. Booleans, characters and primitive number types are kept as they
+ * are, since they are small and the report treats booleans differently.</p>
+ */
+final class CompactFailures {
+
+    private static final int STACK_DEPTH = 8;
+    private static final int FRAME_SIZE = 64;
+
+    private static final String PACKAGE_NAME = CompactFailures.class.getPackageName();
+    private static final String[] FRAMEWORK_PREFIXES = {"org.junit.", "org.opentest4j."};
+
+    private static final Set<Class<?>> SMALL_TYPES = Set.of(Boolean.class, Character.class, Byte.class,
+            Short.class, Integer.class, Long.class, Float.class, Double.class);
+
+    private CompactFailures() {}
+
+    /**
+     * Creates a compact record of a failed assertion
+     * @param afe the failed assertion
+     * @param maxValueLength the maximum length of the messages and string representations, -1 means no limit
+     * @return a compact AssertionFailedError with the same message, expected and actual value representations
+     */
+    static AssertionFailedError compact(AssertionFailedError afe, int maxValueLength) {
+        if (afe instanceof CompactAssertionFailedError) {
+            return afe;
+        }
+        String message = cap(afe.getMessage(), maxValueLength);
+        AssertionFailedError result;
+        if (afe.isExpectedDefined() && afe.isActualDefined()) {
+            result = new CompactAssertionFailedError(message, compactValue(afe.getExpected(), maxValueLength),
+                    compactValue(afe.getActual(), maxValueLength));
+        }
+        else {
+            result = new CompactAssertionFailedError(message);
+        }
+        result.setStackTrace(captureStackTrace());
+        return result;
+    }
+
+    /**
+     * Estimates the number of characters needed to store a compact record
+     * @param afe a compact record produced by this class
+     * @return the estimated size of the record, in characters
+     */
+    static long estimateSize(AssertionFailedError afe) {
+        long size = length(afe.getMessage());
+        if (afe.isExpectedDefined()) {
+            size += length(afe.getExpected().getStringRepresentation());
+        }
+        if (afe.isActualDefined()) {
+            size += length(afe.getActual().getStringRepresentation());
+        }
+        return size + (long) FRAME_SIZE * afe.getStackTrace().length;
+    }
+
+    private static Object compactValue(ValueWrapper wrapper, int maxValueLength) {
+        Object value = wrapper.getValue();
+        if (value == null || SMALL_TYPES.contains(value.getClass())) {
+            return value;
+        }
+        return cap(wrapper.getStringRepresentation(), maxValueLength);
+    }
+
+    private static String cap(String str, int maxLength) {
+        if (str == null || maxLength < 0 || str.length() <= maxLength) {
+            return str;
+        }
+        return str.substring(0, maxLength) + "... (" + (str.length() - maxLength) + " more characters)";
+    }
+
+    private static StackTraceElement[] captureStackTrace() {
+        StackTraceElement[] result = StackWalker.getInstance().walk(frames -> frames
+                .dropWhile(frame -> isFrameworkFrame(frame.getClassName()))
+                .limit(STACK_DEPTH)
+                .map(StackWalker.StackFrame::toStackTraceElement)
+                .toArray(StackTraceElement[]::new));
+        if (result.length == 0) {
+            result = StackWalker.getInstance().walk(frames -> frames
+                    .limit(STACK_DEPTH)
+                    .map(StackWalker.StackFrame::toStackTraceElement)
+                    .toArray(StackTraceElement[]::new));
+        }
+        return result;
+    }
+
+    private static boolean isFrameworkFrame(String className) {
+        // Classes of this package, but not those of its sub packages, are part of the framework
+        if (className.startsWith(PACKAGE_NAME) && className.lastIndexOf('.') == PACKAGE_NAME.length()) {
+            return true;
+        }
+        for (String prefix : FRAMEWORK_PREFIXES) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long length(String str) {
+        return str == null ? 0 : str.length();
+    }
+
+    /**
+     * AssertionFailedError that does not fill in its stack trace when it is constructed
+     */
+    private static final class CompactAssertionFailedError extends AssertionFailedError {
+
+        private CompactAssertionFailedError(String message) {
+            super(message);
+        }
+
+        private CompactAssertionFailedError(String message, Object expected, Object actual) {
+            super(message, expected, actual);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
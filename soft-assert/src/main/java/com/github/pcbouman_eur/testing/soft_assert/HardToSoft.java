@@ -19,12 +19,27 @@ import com.github.pcbouman_eur.testing.sanitze.StackTraceSanitizer;
 import org.opentest4j.AssertionFailedError;
 import org.opentest4j.MultipleFailuresError;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
 /**
  * Static class used to manage potential SoftAssertion contexts.
  *
- * The SoftAssertions are maintained using a ThreadLocal object.
+ * The SoftAssertions are maintained using an InheritableThreadLocal object.
  *
  * A container is initialized when a Thread calls startSoftContext, and is removed when a Thread calls endContext().
+ * Threads started while a context is active inherit it, so assertions made by worker threads of a test are
+ * recorded as well. Each of these threads writes to its own buffer, and the buffers are merged when the context ends.
+ * Assertions made by such a thread after the context ended behave as hard assertions. A thread that inherited a
+ * context may start or attach a context of its own, which replaces the inherited context.
+ *
+ * Contexts are not propagated to threads that already exist, such as the threads of an executor or of the common
+ * ForkJoinPool used by parallel streams. Since these pools create their threads on demand, a task in such a pool
+ * may or may not run in a thread that inherited a context, depending on when the thread was created. Assertions of
+ * such tasks are therefore only reliably recorded if the pool is created during the test.
+ *
+ * As long as no context is active on any thread, the ThreadLocal is not consulted at all, so that code that uses
+ * SoftAssertions without any soft assertion context pays very little for it.
  *
  * If soft assertions are performed while no context was created, regular hard assertions will be applied instead.
  */
@@ -33,11 +48,39 @@ public class HardToSoft {
     private static final String ALREADY_STARTED_ERROR = "An assertion context has already started on this thread. " +
             "Make sure you end it before starting a new one.";
 
-    private static ThreadLocal<AssertionContext> containers = new ThreadLocal<>();
+    private static ThreadLocal<Binding> containers = new InheritableThreadLocal<>() {
+        @Override
+        protected Binding childValue(Binding parentValue) {
+            return new Binding(parentValue.context, false);
+        }
+    };
+    private static final AtomicInteger activeContexts = new AtomicInteger();
 
     private static AssertionContext getContext() {
-        AssertionContext ctx = containers.get();
-        return ctx;
+        Binding binding = containers.get();
+        if (binding == null) {
+            return null;
+        }
+        if (binding.context.isEnded()) {
+            // Inherited contexts are dropped once the test that owns them has ended
+            if (!binding.owner) {
+                containers.remove();
+            }
+            return null;
+        }
+        return binding.context;
+    }
+
+    /**
+     * Obtains the soft assertion context of the current Thread. This method is used by the generated SoftAssertions
+     * class, so that it only has to look up the context once for every assertion.
+     * @return the active context of the current Thread, or null if assertions should be hard assertions
+     */
+    static AssertionContext getSoftContext() {
+        if (activeContexts.get() == 0) {
+            return null;
+        }
+        return getContext();
     }
 
     /**
@@ -56,13 +99,89 @@ public class HardToSoft {
     public static void startSoftContext(int storageLimit, int displayLimit, boolean displayBooleanDetails,
                                         boolean allowNoAssertions, boolean immediateExceptions,
                                         int stacktraceDisplayLimit, StackTraceSanitizer sanitizer) {
-        AssertionContext ctx = containers.get();
-        if (ctx != null) {
-            throw new IllegalStateException(ALREADY_STARTED_ERROR);
-        }
-        ctx = new AssertionContext(storageLimit, displayLimit, displayBooleanDetails, allowNoAssertions,
+        startSoftContext(storageLimit, displayLimit, displayBooleanDetails, allowNoAssertions, immediateExceptions,
+                stacktraceDisplayLimit, sanitizer, false, -1, -1);
+    }
+
+    /**
+     * Start a soft assertion context, which means that from this point onwards, all assertions performed by this
+     * Thread on the SoftAssertions class will be recorded, but failures will be suppressed until the end of the
+     * test.
+     *
+     * @param storageLimit the maximum limit of failed assertion details to store per assertion message
+     * @param displayLimit the maximum number of failed assertion details to display when generating a report
+     * @param displayBooleanDetails whether to include the details of failed boolean assertions in the report
+     * @param allowNoAssertions whether it is allowed to no perform any assertions during the lifespan of the context
+     * @param immediateExceptions whether Exceptions should be thrown immediately after processing
+     * @param stacktraceDisplayLimit limit on the number of stack trace lines to display, -1 means no limit
+     * @param sanitizer StackTraceSanitizer to apply to stack traces before displaying theme
+     * @param compactFailures whether failed assertions should be stored as a random sample of compact records
+     * @param maxValueLength the maximum length of stored values in compact records, -1 means no limit
+     * @param memoryBudget the approximate number of characters the compact records may use, -1 means no limit
+     */
+    public static void startSoftContext(int storageLimit, int displayLimit, boolean displayBooleanDetails,
+                                        boolean allowNoAssertions, boolean immediateExceptions,
+                                        int stacktraceDisplayLimit, StackTraceSanitizer sanitizer,
+                                        boolean compactFailures, int maxValueLength, long memoryBudget) {
+        attachContext(createContext(storageLimit, displayLimit, displayBooleanDetails, allowNoAssertions,
+                immediateExceptions, stacktraceDisplayLimit, sanitizer, compactFailures, maxValueLength,
+                memoryBudget));
+    }
+
+    /**
+     * Creates a soft assertion context without making it the context of the current Thread. Such a context can
+     * be shared by multiple executions of the same test, using attachContext and detachContext.
+     *
+     * @param storageLimit the maximum limit of failed assertion details to store per assertion message
+     * @param displayLimit the maximum number of failed assertion details to display when generating a report
+     * @param displayBooleanDetails whether to include the details of failed boolean assertions in the report
+     * @param allowNoAssertions whether it is allowed to no perform any assertions during the lifespan of the context
+     * @param immediateExceptions whether Exceptions should be thrown immediately after processing
+     * @param stacktraceDisplayLimit limit on the number of stack trace lines to display, -1 means no limit
+     * @param sanitizer StackTraceSanitizer to apply to stack traces before displaying theme
+     * @param compactFailures whether failed assertions should be stored as a random sample of compact records
+     * @param maxValueLength the maximum length of stored values in compact records, -1 means no limit
+     * @param memoryBudget the approximate number of characters the compact records may use, -1 means no limit
+     * @return a new soft assertion context
+     */
+    static AssertionContext createContext(int storageLimit, int displayLimit, boolean displayBooleanDetails,
+                                          boolean allowNoAssertions, boolean immediateExceptions,
+                                          int stacktraceDisplayLimit, StackTraceSanitizer sanitizer,
+                                          boolean compactFailures, int maxValueLength, long memoryBudget) {
+        SoftAssertionData data = new SoftAssertionData(storageLimit, compactFailures, maxValueLength, memoryBudget);
+        return new AssertionContext(data, displayLimit, displayBooleanDetails, allowNoAssertions,
                 immediateExceptions, stacktraceDisplayLimit, sanitizer);
-        containers.set(ctx);
+    }
+
+    /**
+     * Makes an existing soft assertion context the context of the current Thread
+     * @param ctx the context to use for the assertions of the current Thread
+     */
+    static void attachContext(AssertionContext ctx) {
+        Binding current = containers.get();
+        if (current != null && current.owner) {
+            if (!current.context.isEnded()) {
+                throw new IllegalStateException(ALREADY_STARTED_ERROR);
+            }
+            // The context ended on another thread without being detached from this one
+            activeContexts.decrementAndGet();
+        }
+        containers.set(new Binding(ctx, true));
+        activeContexts.incrementAndGet();
+    }
+
+    /**
+     * Removes the soft assertion context from the current Thread, without ending it. Future assertions performed
+     * by the current Thread will behave as hard assertions, until a context is started or attached again.
+     */
+    static void detachContext() {
+        Binding binding = containers.get();
+        if (binding != null) {
+            containers.remove();
+            if (binding.owner) {
+                activeContexts.decrementAndGet();
+            }
+        }
     }
 
     /**
@@ -81,38 +200,98 @@ public class HardToSoft {
      * @return if no failures occurred, an object containing information on the successful assertions is returned
      */
     public static SoftAssertionResult endContext() throws MultipleFailuresError, NoAssertionsPerformedException {
-        AssertionContext ctx = containers.get();
+        Binding binding = containers.get();
         containers.remove();
+        if (binding != null && binding.owner) {
+            activeContexts.decrementAndGet();
+        }
+        AssertionContext ctx = binding == null ? null : binding.context;
         return ctx.endContext();
     }
 
     public static boolean isHardAssert() {
-        AssertionContext ctx = getContext();
+        AssertionContext ctx = getSoftContext();
         return ctx == null;
     }
 
     public static void reportSuccess(String msg) {
         AssertionContext ctx = getContext();
-        ctx.reportSuccess(msg);
+        if (ctx != null) {
+            ctx.reportSuccess(msg);
+        }
+    }
+
+    public static void reportSuccess(Supplier<String> msgSupplier) {
+        AssertionContext ctx = getContext();
+        if (ctx != null) {
+            ctx.reportSuccess(msgSupplier);
+        }
     }
 
+    /**
+     * Obtains the message of an assertion from a message supplier, as done by the Assertions class
+     * @param msgSupplier the supplier of the message, can be null
+     * @return the message produced by the supplier, or null if the supplier is null
+     */
+    public static String getMessage(Supplier<String> msgSupplier) {
+        return msgSupplier == null ? null : msgSupplier.get();
+    }
+
+    /**
+     * Reports multiple failures to the context of the current Thread. If there is no active context, or the context
+     * has already ended, the failures are thrown as a hard assertion.
+     * @param mfe the failures to report
+     * @param msg the message associated with the assertion
+     */
     public static void reportMultipleFailures(MultipleFailuresError mfe, String msg) {
         AssertionContext ctx = getContext();
-        ctx.reportMultipleFailures(mfe, msg);
+        if (ctx == null || !ctx.reportMultipleFailures(mfe, msg)) {
+            throw mfe;
+        }
     }
 
+    /**
+     * Reports a failure to the context of the current Thread. If there is no active context, or the context has
+     * already ended, the failure is thrown as a hard assertion.
+     * @param afe the failure to report
+     * @param msg the message associated with the assertion
+     */
     public static void reportFailure(AssertionFailedError afe, String msg) {
         AssertionContext ctx = getContext();
-        ctx.reportFailure(afe, msg);
+        if (ctx == null || !ctx.reportFailure(afe, msg)) {
+            throw afe;
+        }
     }
 
-    public static void reportException(Throwable t) {
+    /**
+     * Reports an exception to the context of the current Thread
+     * @param t the exception to report
+     * @return false if there is no active context to report to, in which case the caller should throw the exception
+     */
+    public static boolean reportException(Throwable t) {
         AssertionContext ctx = getContext();
-        ctx.reportException(t);
+        return ctx != null && ctx.reportException(t);
     }
 
+    /**
+     * @return whether exceptions should be thrown directly, which is always the case without an active context
+     */
     public static boolean isImmediateExceptions() {
         AssertionContext ctx = getContext();
-        return ctx.isImmediateExceptions();
+        return ctx == null || ctx.isImmediateExceptions();
+    }
+
+    /**
+     * The context of a Thread, together with whether the Thread started or attached it itself, or inherited it
+     */
+    private static final class Binding {
+
+        private final AssertionContext context;
+        private final boolean owner;
+
+        private Binding(AssertionContext context, boolean owner) {
+            this.context = context;
+            this.owner = owner;
+        }
     }
 }
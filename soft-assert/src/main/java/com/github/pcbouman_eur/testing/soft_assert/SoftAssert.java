@@ -34,4 +34,9 @@ public @interface SoftAssert {
     int stacktraceDisplayLimit() default -1;
     boolean sanitizeStacktrace() default true;
     boolean retainSuccessData() default true;
+    boolean compactFailures() default false;
+    int maxValueLength() default 1000;
+    long memoryBudget() default -1;
+    long maxReportLength() default -1;
+    boolean aggregateInvocations() default false;
 }
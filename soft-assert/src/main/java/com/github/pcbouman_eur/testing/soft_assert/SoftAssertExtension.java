@@ -30,19 +30,24 @@ public class SoftAssertExtension implements BeforeTestExecutionCallback, TestExe
                                                 AfterTestExecutionCallback {
 
     public static final String REPORT_KEY = "report";
+    public static final String STRUCTURED_REPORT_KEY = "report-json";
+
+    private static final ExtensionContext.Namespace NAMESPACE =
+            ExtensionContext.Namespace.create(SoftAssertExtension.class);
 
     @Override
     public void beforeTestExecution(ExtensionContext ctx) throws Exception {
-        int storageLimit = getProperty(ctx, SoftAssert::storageLimit, 1000);
-        int displayLimit = getProperty(ctx, SoftAssert::displayLimit, 5);
-        boolean showBooleanDetails = getProperty(ctx, SoftAssert::showBooleanDetails, false);
-        boolean allowNoAssertions = getProperty(ctx, SoftAssert::allowNoAssertions, false);
-        boolean immediateExceptions = getProperty(ctx, SoftAssert::immediateExceptions, true);
-        int stacktraceLimit = getProperty(ctx, SoftAssert::stacktraceDisplayLimit, 1);
-        boolean sanitize = getProperty(ctx, SoftAssert::sanitizeStacktrace, true);
-        StackTraceSanitizer sts = sanitize ? new StackTraceSanitizer(ctx) : null;
-        HardToSoft.startSoftContext(storageLimit, displayLimit, showBooleanDetails, allowNoAssertions,
-                immediateExceptions, stacktraceLimit, sts);
+        Settings settings = getSettings(ctx);
+        if (settings.aggregateInvocations && isInvocation(ctx)) {
+            ExtensionContext parent = ctx.getParent().get();
+            Aggregate aggregate = parent.getStore(NAMESPACE)
+                    .getOrComputeIfAbsent(Aggregate.class, key -> new Aggregate(parent, settings), Aggregate.class);
+            HardToSoft.attachContext(aggregate.context);
+            return;
+        }
+        HardToSoft.startSoftContext(settings.storageLimit, settings.displayLimit, settings.showBooleanDetails,
+                settings.allowNoAssertions, settings.immediateExceptions, settings.stacktraceLimit,
+                settings.sanitizer, settings.compactFailures, settings.maxValueLength, settings.memoryBudget);
     }
 
     @Override
@@ -50,24 +55,70 @@ public class SoftAssertExtension implements BeforeTestExecutionCallback, TestExe
         if (HardToSoft.isHardAssert()) {
             throw throwable;
         }
-        HardToSoft.reportException(throwable);
-        if (HardToSoft.isImmediateExceptions()) {
+        if (!HardToSoft.reportException(throwable) || HardToSoft.isImmediateExceptions()) {
             throw throwable;
         }
     }
 
     @Override
     public void afterTestExecution(ExtensionContext ctx) throws Exception {
-        SoftAssertionResult result = HardToSoft.endContext();
+        if (getSettings(ctx).aggregateInvocations && isInvocation(ctx)) {
+            // The shared context is ended when all invocations are done
+            HardToSoft.detachContext();
+            return;
+        }
+        SoftAssertionResult result;
+        try {
+            result = HardToSoft.endContext();
+        } catch (SoftAssertionFailuresError ex) {
+            publishStructuredReport(ctx, ex.getData());
+            throw ex;
+        }
+        publishReports(ctx, result, getSettings(ctx));
+    }
+
+    private static void publishReports(ExtensionContext ctx, SoftAssertionResult result, Settings settings) {
         if (result.getData().anyAssertions()) {
-            ctx.publishReportEntry(REPORT_KEY, result.getReport());
+            ctx.publishReportEntry(REPORT_KEY, result.getReport(settings.maxReportLength));
+            publishStructuredReport(ctx, result.getData(), settings);
         }
     }
 
-    private static <E> E getProperty(ExtensionContext ctx, Function<SoftAssert,E> fun, E other) {
-        return findSoftAssert(ctx.getElement().get())
-                .map(fun)
-                .orElse(other);
+    private static void publishStructuredReport(ExtensionContext ctx, SoftAssertionData data) {
+        publishStructuredReport(ctx, data, getSettings(ctx));
+    }
+
+    private static void publishStructuredReport(ExtensionContext ctx, SoftAssertionData data, Settings settings) {
+        SoftAssertionJsonLayout layout = new SoftAssertionJsonLayout(settings.displayLimit);
+        ctx.publishReportEntry(STRUCTURED_REPORT_KEY, layout.getReport(data));
+    }
+
+    /**
+     * Checks whether a test is an invocation of a test template, such as a parameterized or repeated test
+     * @param ctx the context of the test that is executed
+     * @return whether the test is one of the invocations of a test template
+     */
+    private static boolean isInvocation(ExtensionContext ctx) {
+        return ctx.getParent()
+                .flatMap(ExtensionContext::getElement)
+                .equals(ctx.getElement());
+    }
+
+    /**
+     * Obtains the settings for the current test. The settings are resolved once per test method, and are stored
+     * in the context of the test class or of the parameterized test, so that all executions of the test can use
+     * them.
+     * @param ctx the context of the test that is executed
+     * @return the settings that apply to the test
+     */
+    private static Settings getSettings(ExtensionContext ctx) {
+        ExtensionContext storeContext = ctx.getParent().orElse(ctx);
+        AnnotatedElement el = ctx.getElement().get();
+        return storeContext.getStore(NAMESPACE).getOrComputeIfAbsent(el, key -> new Settings(ctx), Settings.class);
+    }
+
+    private static <E> E getProperty(Optional<SoftAssert> annotation, Function<SoftAssert,E> fun, E other) {
+        return annotation.map(fun).orElse(other);
     }
 
     private static Optional<SoftAssert> findSoftAssert(AnnotatedElement el) {
@@ -87,4 +138,67 @@ public class SoftAssertExtension implements BeforeTestExecutionCallback, TestExe
         return Optional.empty();
     }
 
+    private static final class Settings {
+        private final int storageLimit;
+        private final int displayLimit;
+        private final boolean showBooleanDetails;
+        private final boolean allowNoAssertions;
+        private final boolean immediateExceptions;
+        private final int stacktraceLimit;
+        private final boolean compactFailures;
+        private final int maxValueLength;
+        private final long memoryBudget;
+        private final long maxReportLength;
+        private final boolean aggregateInvocations;
+        private final StackTraceSanitizer sanitizer;
+
+        private Settings(ExtensionContext ctx) {
+            Optional<SoftAssert> annotation = findSoftAssert(ctx.getElement().get());
+            storageLimit = getProperty(annotation, SoftAssert::storageLimit, 1000);
+            displayLimit = getProperty(annotation, SoftAssert::displayLimit, 5);
+            showBooleanDetails = getProperty(annotation, SoftAssert::showBooleanDetails, false);
+            allowNoAssertions = getProperty(annotation, SoftAssert::allowNoAssertions, false);
+            immediateExceptions = getProperty(annotation, SoftAssert::immediateExceptions, true);
+            stacktraceLimit = getProperty(annotation, SoftAssert::stacktraceDisplayLimit, 1);
+            compactFailures = getProperty(annotation, SoftAssert::compactFailures, false);
+            maxValueLength = getProperty(annotation, SoftAssert::maxValueLength, 1000);
+            memoryBudget = getProperty(annotation, SoftAssert::memoryBudget, -1L);
+            maxReportLength = getProperty(annotation, SoftAssert::maxReportLength, -1L);
+            aggregateInvocations = getProperty(annotation, SoftAssert::aggregateInvocations, false);
+            boolean sanitize = getProperty(annotation, SoftAssert::sanitizeStacktrace, true);
+            sanitizer = sanitize ? new StackTraceSanitizer(ctx) : null;
+        }
+    }
+
+    /**
+     * A soft assertion context shared by all invocations of a test template. It is stored in the context of the
+     * test template, and is ended and reported when that context is closed, after the last invocation.
+     */
+    private static final class Aggregate implements ExtensionContext.Store.CloseableResource {
+        private final ExtensionContext templateContext;
+        private final Settings settings;
+        private final AssertionContext context;
+
+        private Aggregate(ExtensionContext templateContext, Settings settings) {
+            this.templateContext = templateContext;
+            this.settings = settings;
+            this.context = HardToSoft.createContext(settings.storageLimit, settings.displayLimit,
+                    settings.showBooleanDetails, settings.allowNoAssertions, settings.immediateExceptions,
+                    settings.stacktraceLimit, settings.sanitizer, settings.compactFailures, settings.maxValueLength,
+                    settings.memoryBudget);
+        }
+
+        @Override
+        public void close() throws Throwable {
+            SoftAssertionResult result;
+            try {
+                result = context.endContext();
+            } catch (SoftAssertionFailuresError ex) {
+                publishStructuredReport(templateContext, ex.getData(), settings);
+                throw ex;
+            }
+            publishReports(templateContext, result, settings);
+        }
+    }
+
 }
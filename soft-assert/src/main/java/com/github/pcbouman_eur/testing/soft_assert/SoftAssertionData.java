@@ -19,26 +19,51 @@ import org.opentest4j.AssertionFailedError;
 import org.opentest4j.MultipleFailuresError;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
+/**
+ * <p>Stores the outcomes of the assertions performed in a single soft assertion context.</p>
+ *
+ * <p>Successes and failures are counted per unique message in striped counters, so assertions made from many
+ * threads do not contend on a shared lock and a successful assertion does not allocate once its message has
+ * been seen. The counts are only copied into sorted maps when they are requested, which is typically done
+ * once when the report is built.</p>
+ *
+ * <p>Message suppliers are called when the assertion is reported, on the thread that performed the assertion, since
+ * even a lambda expression that captures no values may produce a different message on every call. Assertions
+ * without a message are counted under a default description.</p>
+ *
+ * <p>By default, the first failed assertions for every message are stored as they are. In compact mode, failed
+ * assertions are stored as compact records without references to the compared values, a uniform sample of the
+ * failures is kept for every message, and the total size of the stored records can be limited by a memory
+ * budget.</p>
+ */
 final public class SoftAssertionData {
 
+    private static final String NULL_MESSAGE = "Assertion without a description";
 
-    private final Object monitor = new Object();
-
-    private final Map<String,Integer> successCounts = new TreeMap<>();
-    private final Map<String,Integer> failureCounts = new TreeMap<>();
-    private final Map<String,Integer> totalCounts = new TreeMap<>();
+    private final ConcurrentMap<String,MessageCounts> counts = new ConcurrentHashMap<>();
 
+    private final Object monitor = new Object();
     private final Map<String, List<AssertionFailedError>> failures = new TreeMap<>();
     private final Set<String> truncatedFailures = Collections.synchronizedSet(new HashSet<>());
     private final Map<Class<? extends Throwable>, List<Throwable>> exceptions = new LinkedHashMap<>();
 
     private final int storageLimit;
+    private final boolean compactFailures;
+    private final int maxValueLength;
+    private final long memoryBudget;
+    private long memoryUsed;
 
     private final AtomicInteger failuresCount = new AtomicInteger();
     private final AtomicInteger exceptionCount = new AtomicInteger();
-    private boolean hasSuccess;
+    private volatile boolean hasSuccess;
 
     /**
      * Sets up a AssertionContext. Since soft assertions will keep all failed assertions in memory until the
@@ -48,31 +73,68 @@ final public class SoftAssertionData {
      * @param storageLimit the maximum number of failed assertions to store per unique message
      */
     public SoftAssertionData(int storageLimit) {
+        this(storageLimit, false, -1, -1);
+    }
+
+    /**
+     * Sets up a AssertionContext that can store failed assertions in a compact form. In compact mode, a random
+     * sample of at most storageLimit failed assertions is kept per unique message, and the stored failures only
+     * hold the string representations of the expected and actual values. Setting a memory budget enables the
+     * compact mode.
+     *
+     * @param storageLimit the maximum number of failed assertions to store per unique message
+     * @param compactFailures whether failed assertions should be stored as compact records
+     * @param maxValueLength the maximum length of the value representations in compact records, -1 means no limit
+     * @param memoryBudget the approximate number of characters that all compact records may use, -1 means no limit
+     */
+    public SoftAssertionData(int storageLimit, boolean compactFailures, int maxValueLength, long memoryBudget) {
         this.storageLimit = storageLimit;
+        this.compactFailures = compactFailures || memoryBudget >= 0;
+        this.maxValueLength = maxValueLength;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Creates an empty SoftAssertionData object with the same storage settings as this object
+     * @return a new SoftAssertionData object with the same storage settings
+     */
+    SoftAssertionData createBuffer() {
+        return new SoftAssertionData(storageLimit, compactFailures, maxValueLength, memoryBudget);
     }
 
     /**
      * Used to report a successful assertion
-     * @param msg the message associated with the assertion
+     * @param msg the message associated with the assertion, null is counted under a default description
      */
     public void reportSuccess(String msg) {
-        hasSuccess = true;
-        incrementSynchronized(successCounts, msg);
-        incrementSynchronized(totalCounts, msg);
+        if (!hasSuccess) {
+            hasSuccess = true;
+        }
+        countsFor(msg == null ? NULL_MESSAGE : msg).success.increment();
+    }
+
+    /**
+     * Used to report a successful assertion of which the message is provided by a supplier. The supplier is called
+     * immediately, and the assertion is counted under the message it produces.
+     * @param msgSupplier the supplier of the message associated with the assertion, can be null
+     */
+    public void reportSuccess(Supplier<String> msgSupplier) {
+        reportSuccess(msgSupplier == null ? null : msgSupplier.get());
     }
 
     /**
      * Used to report a failed assertion
      * @param afe the exception produced by the failed assertion
-     * @param msg the message associated with the assertion
+     * @param msg the message associated with the assertion, null is counted under a default description
      */
     public void reportFailure(AssertionFailedError afe, String msg) {
-        failuresCount.incrementAndGet();
-        incrementSynchronized(failureCounts, msg);
-        incrementSynchronized(totalCounts, msg);
-        if (insertSynchronized(failures, msg, afe, storageLimit)) {
-            truncatedFailures.add(msg);
+        if (msg == null) {
+            msg = NULL_MESSAGE;
         }
+        failuresCount.incrementAndGet();
+        MessageCounts mc = countsFor(msg);
+        mc.failure.increment();
+        storeFailure(mc, afe, msg);
     }
 
     /**
@@ -106,8 +168,43 @@ final public class SoftAssertionData {
         }
     }
 
+    /**
+     * Adds all assertions recorded in another SoftAssertionData object to this object. This is used to combine
+     * the assertions made by different threads into a single report. The storage limit of this object is
+     * respected while storing the failures of the other object.
+     * @param other the data to add to this object
+     */
+    void merge(SoftAssertionData other) {
+        if (other.hasSuccess) {
+            hasSuccess = true;
+        }
+        failuresCount.addAndGet(other.failuresCount.get());
+        exceptionCount.addAndGet(other.exceptionCount.get());
+        for (Map.Entry<String, MessageCounts> entry : other.counts.entrySet()) {
+            MessageCounts mc = countsFor(entry.getKey());
+            mc.success.add(entry.getValue().success.sum());
+            mc.failure.add(entry.getValue().failure.sum());
+        }
+        for (Map.Entry<String, List<AssertionFailedError>> entry : other.getFailures().entrySet()) {
+            String msg = entry.getKey();
+            synchronized (monitor) {
+                failures.computeIfAbsent(msg, k -> new ArrayList<>());
+            }
+            MessageCounts mc = countsFor(msg);
+            for (AssertionFailedError afe : entry.getValue()) {
+                storeFailure(mc, afe, msg);
+            }
+        }
+        truncatedFailures.addAll(other.truncatedFailures);
+        for (List<Throwable> lst : other.getExceptions().values()) {
+            for (Throwable t : lst) {
+                insertSynchronized(exceptions, t.getClass(), t, Integer.MAX_VALUE);
+            }
+        }
+    }
+
     public Map<String, Integer> getTotalCounts() {
-        return Collections.unmodifiableMap(totalCounts);
+        return snapshot(true, true);
     }
 
     public boolean anyAssertions() {
@@ -119,7 +216,7 @@ final public class SoftAssertionData {
     }
 
     public Map<String, Integer> getSuccessCounts() {
-        return Collections.unmodifiableMap(successCounts);
+        return snapshot(true, false);
     }
 
     public int getFailuresCount() {
@@ -127,13 +224,15 @@ final public class SoftAssertionData {
     }
 
     public Map<String, Integer> getFailureCounts() {
-        return Collections.unmodifiableMap(failureCounts);
+        return snapshot(false, true);
     }
 
     public Map<String, List<AssertionFailedError>> getFailures() {
         Map<String, List<AssertionFailedError>> result = new TreeMap<>();
-        for (Map.Entry<String, List<AssertionFailedError>> entry : failures.entrySet()) {
-            result.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+        synchronized (monitor) {
+            for (Map.Entry<String, List<AssertionFailedError>> entry : failures.entrySet()) {
+                result.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+            }
         }
         return result;
     }
@@ -144,18 +243,93 @@ final public class SoftAssertionData {
 
     public Map<Class<? extends Throwable>, List<Throwable>> getExceptions() {
         Map<Class<? extends Throwable>, List<Throwable>> result = new LinkedHashMap<>();
-        for (Map.Entry<Class<? extends Throwable>, List<Throwable>> entry : exceptions.entrySet()) {
-            result.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+        synchronized (monitor) {
+            for (Map.Entry<Class<? extends Throwable>, List<Throwable>> entry : exceptions.entrySet()) {
+                result.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+            }
         }
         return result;
     }
 
-    private void incrementSynchronized(Map<String,Integer> map, String key) {
+    private MessageCounts countsFor(String msg) {
+        MessageCounts mc = counts.get(msg);
+        if (mc == null) {
+            mc = counts.computeIfAbsent(msg, k -> new MessageCounts());
+        }
+        return mc;
+    }
+
+    private void storeFailure(MessageCounts mc, AssertionFailedError afe, String msg) {
+        if (compactFailures && storageLimit > 0) {
+            sampleFailure(mc, afe, msg);
+            return;
+        }
+        if (storageLimit > 0 && mc.storedFailures.get() >= storageLimit) {
+            // The storage limit for this message was reached, so there is no need to take the lock
+            truncatedFailures.add(msg);
+            return;
+        }
+        if (insertSynchronized(failures, msg, afe, storageLimit)) {
+            truncatedFailures.add(msg);
+        }
+        else if (storageLimit > 0) {
+            mc.storedFailures.incrementAndGet();
+        }
+    }
+
+    private void sampleFailure(MessageCounts mc, AssertionFailedError afe, String msg) {
+        // Reservoir sampling: the n-th failure replaces a random stored failure with probability storageLimit/n
+        long n = mc.seenFailures.incrementAndGet();
+        int slot = -1;
+        if (n > storageLimit) {
+            long index = ThreadLocalRandom.current().nextLong(n);
+            if (index >= storageLimit) {
+                truncatedFailures.add(msg);
+                return;
+            }
+            slot = (int) index;
+        }
+        AssertionFailedError record = CompactFailures.compact(afe, maxValueLength);
+        long size = CompactFailures.estimateSize(record);
         synchronized (monitor) {
-            map.merge(key, 1, Integer::sum);
+            List<AssertionFailedError> lst = failures.computeIfAbsent(msg, k -> new ArrayList<>());
+            boolean replace = slot >= 0 && slot < lst.size();
+            long replacedSize = replace ? CompactFailures.estimateSize(lst.get(slot)) : 0;
+            if (!replace && lst.size() >= storageLimit
+                    || memoryBudget >= 0 && memoryUsed - replacedSize + size > memoryBudget) {
+                truncatedFailures.add(msg);
+                return;
+            }
+            memoryUsed += size - replacedSize;
+            if (replace) {
+                lst.set(slot, record);
+            }
+            else {
+                lst.add(record);
+            }
+        }
+        if (n > storageLimit) {
+            truncatedFailures.add(msg);
         }
     }
 
+    private Map<String, Integer> snapshot(boolean success, boolean failure) {
+        Map<String, Integer> result = new TreeMap<>();
+        for (Map.Entry<String, MessageCounts> entry : counts.entrySet()) {
+            long count = 0;
+            if (success) {
+                count += entry.getValue().success.sum();
+            }
+            if (failure) {
+                count += entry.getValue().failure.sum();
+            }
+            if (count > 0) {
+                result.put(entry.getKey(), (int) Math.min(count, Integer.MAX_VALUE));
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
     private <K,E> boolean insertSynchronized(Map<K,List<E>> map, K key, E element, int storageLimit) {
         boolean truncated = false;
         synchronized (monitor) {
@@ -180,12 +354,21 @@ final public class SoftAssertionData {
 
     public List<? extends Throwable> getAllErrors() {
         List<Throwable> errors = new ArrayList<>();
-        for (List<AssertionFailedError> lst : failures.values()) {
-            errors.addAll(lst);
-        }
-        for (List<Throwable> lst : exceptions.values()) {
-            errors.addAll(lst);
+        synchronized (monitor) {
+            for (List<AssertionFailedError> lst : failures.values()) {
+                errors.addAll(lst);
+            }
+            for (List<Throwable> lst : exceptions.values()) {
+                errors.addAll(lst);
+            }
         }
         return errors;
     }
+
+    private static final class MessageCounts {
+        private final LongAdder success = new LongAdder();
+        private final LongAdder failure = new LongAdder();
+        private final AtomicInteger storedFailures = new AtomicInteger();
+        private final AtomicLong seenFailures = new AtomicLong();
+    }
 }
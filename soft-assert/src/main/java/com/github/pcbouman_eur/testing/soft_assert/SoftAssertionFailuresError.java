@@ -17,6 +17,7 @@ package com.github.pcbouman_eur.testing.soft_assert;
 
 import org.opentest4j.MultipleFailuresError;
 
+import java.io.IOException;
 import java.util.List;
 
 public class SoftAssertionFailuresError extends MultipleFailuresError {
@@ -64,6 +65,10 @@ public class SoftAssertionFailuresError extends MultipleFailuresError {
         return layout.getReport(data);
     }
 
+    public void writeLayoutData(Appendable out, long maxLength) throws IOException {
+        layout.writeReport(data, out, maxLength);
+    }
+
     @Override
     public String toString() {
         return getMessage();
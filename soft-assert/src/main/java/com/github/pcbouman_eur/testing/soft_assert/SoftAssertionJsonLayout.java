@@ -0,0 +1,172 @@
+/* Copyright 2022 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.github.pcbouman_eur.testing.soft_assert;
+
+import org.opentest4j.AssertionFailedError;
+import org.opentest4j.ValueWrapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <p>Produces a compact JSON representation of the successes, failures and exceptions recorded in a
+ * SoftAssertionData object, so that tools can process the outcomes of soft assertions without parsing the text
+ * report. The JSON object has the following structure:</p>
+ *
+ * <pre>
+ * {"successes":12,"failures":3,"exceptions":1,
+ *  "messages":[{"message":"...","successes":12,"failures":3,"samples":[{"expected":"...","actual":"..."}]}],
+ *  "exceptionTypes":[{"type":"java.lang.IllegalStateException","count":1}]}
+ * </pre>
+ *
+ * <p>The messages are sorted, and at most sampleLimit stored failures with an expected and actual value are
+ * included per message.</p>
+ */
+public final class SoftAssertionJsonLayout {
+
+    private final int sampleLimit;
+
+    /**
+     * Sets up a SoftAssertionJsonLayout
+     * @param sampleLimit the maximum number of failure details to include per unique message
+     */
+    public SoftAssertionJsonLayout(int sampleLimit) {
+        this.sampleLimit = sampleLimit;
+    }
+
+    /**
+     * Produces a JSON representation of the data
+     * @param data the data to represent
+     * @return a compact JSON string
+     */
+    public String getReport(SoftAssertionData data) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            writeReport(data, sb);
+        } catch (IOException ex) {
+            // A StringBuilder does not throw IOExceptions
+            throw new UncheckedIOException(ex);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes a JSON representation of the data to an Appendable
+     * @param data the data to represent
+     * @param out the Appendable to write to
+     * @throws IOException if the Appendable throws an IOException
+     */
+    public void writeReport(SoftAssertionData data, Appendable out) throws IOException {
+        Map<String, Integer> totalCounts = data.getTotalCounts();
+        Map<String, Integer> successCounts = data.getSuccessCounts();
+        Map<String, Integer> failureCounts = data.getFailureCounts();
+        Map<String, List<AssertionFailedError>> failures = data.getFailures();
+        long successes = successCounts.values().stream().mapToLong(i -> i).sum();
+
+        out.append("{\"successes\":").append(Long.toString(successes));
+        out.append(",\"failures\":").append(Integer.toString(data.getFailuresCount()));
+        out.append(",\"exceptions\":").append(Integer.toString(data.getExceptionCount()));
+        out.append(",\"messages\":[");
+        boolean first = true;
+        for (String msg : totalCounts.keySet()) {
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            out.append("{\"message\":");
+            writeString(msg, out);
+            out.append(",\"successes\":").append(Integer.toString(successCounts.getOrDefault(msg, 0)));
+            out.append(",\"failures\":").append(Integer.toString(failureCounts.getOrDefault(msg, 0)));
+            out.append(",\"samples\":[");
+            writeSamples(failures.getOrDefault(msg, Collections.emptyList()), out);
+            out.append("]}");
+        }
+        out.append("],\"exceptionTypes\":[");
+        first = true;
+        for (Map.Entry<Class<? extends Throwable>, List<Throwable>> entry : data.getExceptions().entrySet()) {
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            out.append("{\"type\":");
+            writeString(entry.getKey().getName(), out);
+            out.append(",\"count\":").append(Integer.toString(entry.getValue().size()));
+            out.append('}');
+        }
+        out.append("]}");
+    }
+
+    private void writeSamples(List<AssertionFailedError> list, Appendable out) throws IOException {
+        int count = 0;
+        for (AssertionFailedError afe : list) {
+            if (count >= sampleLimit) {
+                return;
+            }
+            if (afe.isExpectedDefined() && afe.isActualDefined()) {
+                if (count > 0) {
+                    out.append(',');
+                }
+                out.append("{\"expected\":");
+                writeString(valueToString(afe.getExpected()), out);
+                out.append(",\"actual\":");
+                writeString(valueToString(afe.getActual()), out);
+                out.append('}');
+                count++;
+            }
+        }
+    }
+
+    private static String valueToString(ValueWrapper wrapper) {
+        if (wrapper.getValue() == null) {
+            return "null";
+        }
+        return wrapper.getStringRepresentation();
+    }
+
+    private static void writeString(String str, Appendable out) throws IOException {
+        if (str == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        int start = 0;
+        for (int i=0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20) {
+                out.append(str, start, i);
+                start = i + 1;
+                if (c == '\n') {
+                    out.append("\\n");
+                }
+                else if (c == '\t') {
+                    out.append("\\t");
+                }
+                else if (c < 0x20) {
+                    out.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                }
+                else {
+                    out.append('\\').append(c);
+                }
+            }
+        }
+        out.append(str, start, str.length());
+        out.append('"');
+    }
+}
@@ -15,6 +15,8 @@
 
 package com.github.pcbouman_eur.testing.soft_assert;
 
+import java.io.IOException;
+
 public final class SoftAssertionResult {
 
     private final SoftAssertionData data;
@@ -36,4 +38,12 @@ public final class SoftAssertionResult {
     public String getReport() {
         return layout.getReport(data);
     }
+
+    public String getReport(long maxLength) {
+        return layout.getReport(data, maxLength);
+    }
+
+    public void writeReport(Appendable out, long maxLength) throws IOException {
+        layout.writeReport(data, out, maxLength);
+    }
 }
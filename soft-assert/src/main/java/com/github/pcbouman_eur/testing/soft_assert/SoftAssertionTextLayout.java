@@ -19,11 +19,15 @@ import com.github.pcbouman_eur.testing.sanitze.StackTraceSanitizer;
 import org.opentest4j.AssertionFailedError;
 import org.opentest4j.ValueWrapper;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.stream.Collectors;
 
 public final class SoftAssertionTextLayout {
 
+    private static final String TRUNCATED_REPORT = "\n... the remainder of the report was omitted, " +
+            "as it exceeds the maximum report length\n";
 
     private final int displayLimit;
     private final boolean displayBooleanDetails;
@@ -56,58 +60,72 @@ public final class SoftAssertionTextLayout {
      * @return a report of successes, failures and exception recorded from soft assertions
      */
     public String getReport(SoftAssertionData data) {
+        return getReport(data, -1);
+    }
+
+    /**
+     * Produces a report of successes, failures and exceptions recorded by this AssertionContext, of which the
+     * length is limited
+     *
+     * @param data the data to produce a report for
+     * @param maxLength the maximum number of characters of the report, -1 means no limit
+     * @return a report of successes, failures and exception recorded from soft assertions
+     */
+    public String getReport(SoftAssertionData data, long maxLength) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            writeReport(data, sb, maxLength);
+        } catch (IOException ex) {
+            // A StringBuilder does not throw IOExceptions
+            throw new UncheckedIOException(ex);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes a report of successes, failures and exceptions recorded by this AssertionContext to an Appendable,
+     * such as a Writer. The report is written line by line, so it does not have to be kept in memory as a whole.
+     * If the report exceeds the maximum length, it is cut off and ends with a note that it was truncated.
+     *
+     * @param data the data to produce a report for
+     * @param out the Appendable to write the report to
+     * @param maxLength the maximum number of characters to write, excluding the truncation note, -1 means no limit
+     * @throws IOException if the Appendable throws an IOException
+     */
+    public void writeReport(SoftAssertionData data, Appendable out, long maxLength) throws IOException {
+        LimitedAppendable lout = new LimitedAppendable(out, maxLength);
+        Map<String,Integer> totalCounts = data.getTotalCounts();
         // Compute the width for number formatting options
         int colWidth = (int) Math.floor(1 + Math.log10(
-                data.getTotalCounts().values().stream().mapToInt(i -> i).max().orElse(1)));
-        String format = "[ %"+colWidth+"d of %"+colWidth+"d ]";
+                totalCounts.values().stream().mapToInt(i -> i).max().orElse(1)));
 
-        StringBuilder sb = new StringBuilder();
-        sb.append("\n");
+        lout.append("\n");
         if (data.hasSuccess()) {
-            sb.append(reportMap(data.getSuccessCounts(), data.getTotalCounts(), null, "SUCCESS", format));
-            sb.append("\n\n");
+            writeMap(data.getSuccessCounts(), totalCounts, null, "SUCCESS", colWidth, lout);
+            lout.append("\n\n");
         }
-        if (data.getFailuresCount() > 0) {
-            sb.append(reportMap(data.getFailureCounts(), data.getTotalCounts(), data.getFailures(), "FAILURES", format));
-            sb.append("\n\n");
+        if (data.getFailuresCount() > 0 && !lout.isFull()) {
+            writeMap(data.getFailureCounts(), totalCounts, data.getFailures(), "FAILURES", colWidth, lout);
+            lout.append("\n\n");
         }
-        if (data.getExceptionCount() > 0) {
-            sb.append(formatLabel("EXCEPTIONS"));
-            sb.append("\n\n");
+        if (data.getExceptionCount() > 0 && !lout.isFull()) {
+            writeLabel("EXCEPTIONS", lout);
+            lout.append("\n\n");
             for (Map.Entry<Class<? extends Throwable>,List<Throwable>> entry : data.getExceptions().entrySet()) {
                 Class<?> type = entry.getKey();
                 List<Throwable> lst = entry.getValue();
-                sb.append(lst.size()).append(" of type ").append(type.getSimpleName());
+                lout.append(Integer.toString(lst.size())).append(" of type ").append(type.getSimpleName());
                 for (Throwable t : lst) {
-                    sb.append("\n   ")
-                            .append(layoutExceptionHeader(type, t))
-                            .append("\n");
-                    StackTraceElement[] st = t.getStackTrace();
-                    if (sanitizer != null) {
-                        st = sanitizer.sanitize(st);
-                    }
-                    int length = stacktraceDisplayLength < 0 ? st.length : Math.min(stacktraceDisplayLength, st.length);
-                    for (int i=0; i < length; i++) {
-                        StackTraceElement ste = st[i];
-                        sb.append("      at ")
-                                .append(ste.getClassName())
-                                .append(".")
-                                .append(ste.getMethodName());
-                        if (ste.isNativeMethod()) {
-                            sb.append("(Native Method)\n");
-                        }
-                        else {
-                            sb.append("(")
-                                    .append(ste.getFileName())
-                                    .append(":")
-                                    .append(ste.getLineNumber())
-                                    .append(")\n");
-                        }
+                    if (lout.isFull()) {
+                        return;
                     }
+                    lout.append("\n   ");
+                    writeExceptionHeader(type, t, lout);
+                    lout.append("\n");
+                    writeStackTrace(t, lout);
                 }
             }
         }
-        return sb.toString();
     }
 
     public List<Throwable> getFormattedThrowables(List<? extends Throwable> failures) {
@@ -128,51 +146,83 @@ public final class SoftAssertionTextLayout {
             String key = entry.getKey();
             List<AssertionFailedError> errors = entry.getValue();
             if (!errors.isEmpty()) {
-                String details = getAssertionFailedErrors(entry.getValue());
-                result.add(new FormatThrowable(key + "\n" + details));
+                StringBuilder sb = new StringBuilder(key).append("\n");
+                try {
+                    writeAssertionFailedErrors(errors, new LimitedAppendable(sb, -1));
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                result.add(new FormatThrowable(sb.toString()));
             }
         }
         return result;
     }
 
-    private StringBuilder layoutExceptionHeader(Class<?> type, Throwable t) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("*")
-          .append(type.getSimpleName())
-          .append("*");
+    private void writeExceptionHeader(Class<?> type, Throwable t, Appendable out) throws IOException {
+        out.append("*")
+           .append(type.getSimpleName())
+           .append("*");
         if (t.getMessage() != null) {
-            sb.append(" : ");
-            sb.append(t.getMessage().replace("\n", " "));
+            out.append(" : ");
+            writeReplacingNewlines(t.getMessage(), " ", out);
         }
-        return sb;
     }
 
+    private void writeStackTrace(Throwable t, Appendable out) throws IOException {
+        StackTraceElement[] st = t.getStackTrace();
+        if (sanitizer != null) {
+            st = sanitizer.sanitize(st);
+        }
+        int length = stacktraceDisplayLength < 0 ? st.length : Math.min(stacktraceDisplayLength, st.length);
+        for (int i=0; i < length; i++) {
+            StackTraceElement ste = st[i];
+            out.append("      at ")
+                    .append(ste.getClassName())
+                    .append(".")
+                    .append(ste.getMethodName());
+            if (ste.isNativeMethod()) {
+                out.append("(Native Method)\n");
+            }
+            else {
+                out.append("(")
+                        .append(String.valueOf(ste.getFileName()))
+                        .append(":")
+                        .append(Integer.toString(ste.getLineNumber()))
+                        .append(")\n");
+            }
+        }
+    }
 
-    private StringBuilder reportMap(Map<String,Integer> counts, Map<String,Integer> totalCounts,
-                                    Map<String,List<AssertionFailedError>> failures, String label, String format) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(formatLabel(label));
-        sb.append("\n\n");
+    private void writeMap(Map<String,Integer> counts, Map<String,Integer> totalCounts,
+                          Map<String,List<AssertionFailedError>> failures, String label, int colWidth,
+                          LimitedAppendable out) throws IOException {
+        writeLabel(label, out);
+        out.append("\n\n");
         for (Map.Entry<String,Integer> entry : counts.entrySet()) {
+            if (out.isFull()) {
+                return;
+            }
             String msg = entry.getKey();
             int successCount = entry.getValue();
             int totalCount = totalCounts.get(msg);
-            sb.append(String.format(Locale.ROOT, format, successCount, totalCount));
-            sb.append(" ");
-            sb.append(msg);
-            sb.append("\n");
+            out.append("[ ");
+            writePadded(successCount, colWidth, out);
+            out.append(" of ");
+            writePadded(totalCount, colWidth, out);
+            out.append(" ] ");
+            out.append(msg);
+            out.append("\n");
             if (failures != null && displayLimit > 0) {
                 List<AssertionFailedError> list = failures.get(msg);
                 if (list != null) {
-                    sb.append(getAssertionFailedErrors(list));
+                    writeAssertionFailedErrors(list, out);
                 }
             }
         }
-        return sb;
     }
 
-    private String getAssertionFailedErrors(List<AssertionFailedError> list) {
-        StringBuilder sb = new StringBuilder();
+    private void writeAssertionFailedErrors(List<AssertionFailedError> list, LimitedAppendable out)
+            throws IOException {
         boolean truncated = false;
         int displayCount = 0;
         for (AssertionFailedError afe : list) {
@@ -183,24 +233,24 @@ public final class SoftAssertionTextLayout {
                     truncated = true;
                     break;
                 }
-                writeAssertionFailedError(afe, sb);
+                if (out.isFull()) {
+                    return;
+                }
+                writeAssertionFailedError(afe, out);
                 displayCount++;
             }
         }
         if (truncated) {
-            sb.append("   Some failure details were omitted for reasons of brevity\n");
+            out.append("   Some failure details were omitted for reasons of brevity\n");
         }
-        return sb.toString();
     }
 
-    private void writeAssertionFailedError(AssertionFailedError afe, StringBuilder sb) {
-        String expected = valueToString(afe.getExpected());
-        String actual = valueToString(afe.getActual());
-        sb.append("   * Expected value: '");
-        sb.append(expected.replace("\n", "\\n"));
-        sb.append("'\n     Actual value:   '");
-        sb.append(actual.replace("\n", "\\n"));
-        sb.append("'\n");
+    private void writeAssertionFailedError(AssertionFailedError afe, Appendable out) throws IOException {
+        out.append("   * Expected value: '");
+        writeReplacingNewlines(valueToString(afe.getExpected()), "\\n", out);
+        out.append("'\n     Actual value:   '");
+        writeReplacingNewlines(valueToString(afe.getActual()), "\\n", out);
+        out.append("'\n");
     }
 
     private boolean isBoolean(ValueWrapper wrapper) {
@@ -217,14 +267,31 @@ public final class SoftAssertionTextLayout {
         return wrapper.getStringRepresentation();
     }
 
-    private StringBuilder formatLabel(String label) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("*".repeat(label.length() + 4))
+    private static void writeReplacingNewlines(String str, String replacement, Appendable out) throws IOException {
+        int start = 0;
+        int index = str.indexOf('\n');
+        while (index >= 0) {
+            out.append(str, start, index).append(replacement);
+            start = index + 1;
+            index = str.indexOf('\n', start);
+        }
+        out.append(str, start, str.length());
+    }
+
+    private static void writePadded(int value, int width, Appendable out) throws IOException {
+        String str = Integer.toString(value);
+        for (int i=str.length(); i < width; i++) {
+            out.append(' ');
+        }
+        out.append(str);
+    }
+
+    private static void writeLabel(String label, Appendable out) throws IOException {
+        out.append("*".repeat(label.length() + 4))
                 .append("\n* ")
                 .append(label)
                 .append(" *\n")
                 .append("*".repeat(label.length() + 4));
-        return sb;
     }
 
     public static class FormatThrowable extends RuntimeException {
@@ -239,4 +306,65 @@ public final class SoftAssertionTextLayout {
         }
     }
 
+    /**
+     * Appendable that passes characters to another Appendable until a maximum number of characters is written.
+     * After that, a note is written once and all further characters are ignored.
+     */
+    private static final class LimitedAppendable implements Appendable {
+
+        private final Appendable out;
+        private final long maxLength;
+        private long written;
+        private boolean full;
+
+        private LimitedAppendable(Appendable out, long maxLength) {
+            this.out = out;
+            this.maxLength = maxLength;
+        }
+
+        private boolean isFull() {
+            return full;
+        }
+
+        @Override
+        public LimitedAppendable append(CharSequence csq) throws IOException {
+            CharSequence str = csq == null ? "null" : csq;
+            return append(str, 0, str.length());
+        }
+
+        @Override
+        public LimitedAppendable append(CharSequence csq, int start, int end) throws IOException {
+            if (full) {
+                return this;
+            }
+            CharSequence str = csq == null ? "null" : csq;
+            if (maxLength >= 0 && written + (end - start) > maxLength) {
+                int allowed = (int) (maxLength - written);
+                out.append(str, start, start + allowed);
+                written += allowed;
+                full = true;
+                out.append(TRUNCATED_REPORT);
+                return this;
+            }
+            out.append(str, start, end);
+            written += end - start;
+            return this;
+        }
+
+        @Override
+        public LimitedAppendable append(char c) throws IOException {
+            if (full) {
+                return this;
+            }
+            if (maxLength >= 0 && written + 1 > maxLength) {
+                full = true;
+                out.append(TRUNCATED_REPORT);
+                return this;
+            }
+            out.append(c);
+            written++;
+            return this;
+        }
+    }
+
 }
@@ -0,0 +1,33 @@
+/* Copyright 2022 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.github.pcbouman_eur.testing.soft_assert.test;
+
+import com.github.pcbouman_eur.testing.soft_assert.SoftAssert;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.RepetitionInfo;
+
+import static com.github.pcbouman_eur.testing.soft_assert.SoftAssertions.*;
+
+@SoftAssert(aggregateInvocations = true)
+public class AggregateTestClass {
+
+    @RepeatedTest(10)
+    public void repeatedTest(RepetitionInfo info) {
+        assertTrue(info.getCurrentRepetition() % 2 == 0, "Repetition is even");
+        assertTrue(info.getCurrentRepetition() > 0, "Repetition is positive");
+    }
+
+}
@@ -0,0 +1,272 @@
+/* Copyright 2022 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.github.pcbouman_eur.testing.soft_assert.test;
+
+import com.github.pcbouman_eur.testing.sanitze.StackTraceSanitizer;
+import com.github.pcbouman_eur.testing.soft_assert.HardToSoft;
+import com.github.pcbouman_eur.testing.soft_assert.NoAssertionsPerformedException;
+import com.github.pcbouman_eur.testing.soft_assert.SoftAssertionData;
+import com.github.pcbouman_eur.testing.soft_assert.SoftAssertionFailuresError;
+import com.github.pcbouman_eur.testing.soft_assert.SoftAssertionJsonLayout;
+import com.github.pcbouman_eur.testing.soft_assert.SoftAssertionResult;
+import com.github.pcbouman_eur.testing.soft_assert.SoftAssertionTextLayout;
+import com.github.pcbouman_eur.testing.soft_assert.SoftAssertions;
+import org.junit.jupiter.api.Test;
+import org.opentest4j.AssertionFailedError;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSoftAssertionData {
+
+    @Test
+    public void concurrentCountsTest() throws InterruptedException {
+        SoftAssertionData data = new SoftAssertionData(3);
+        int threadCount = 4;
+        int repeats = 10000;
+        List<Thread> threads = new ArrayList<>();
+        for (int i=0; i < threadCount; i++) {
+            threads.add(new Thread(() -> {
+                for (int t=0; t < repeats; t++) {
+                    data.reportSuccess("b");
+                    data.reportSuccess("a");
+                    data.reportFailure(new AssertionFailedError("fail"), "a");
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(List.of("a", "b"), new ArrayList<>(data.getTotalCounts().keySet()),
+                "Messages are sorted in the report");
+        assertEquals(2 * threadCount * repeats, data.getTotalCounts().get("a"), "All assertions are counted");
+        assertEquals(threadCount * repeats, data.getSuccessCounts().get("a"), "All successes are counted");
+        assertEquals(threadCount * repeats, data.getFailureCounts().get("a"), "All failures are counted");
+        assertFalse(data.getFailureCounts().containsKey("b"), "Messages without failures have no failure count");
+        assertEquals(threadCount * repeats, data.getFailuresCount(), "Total number of failures is correct");
+        assertEquals(3, data.getFailures().get("a").size(), "Storage limit is respected");
+        assertTrue(data.hasSuccess(), "Successes were recorded");
+    }
+
+    @Test
+    public void childThreadTest() throws InterruptedException {
+        HardToSoft.startSoftContext(3, 3, false, false, false, -1, new StackTraceSanitizer());
+        List<Thread> threads = new ArrayList<>();
+        for (int i=0; i < 4; i++) {
+            threads.add(new Thread(() -> {
+                for (int t=0; t < 100; t++) {
+                    SoftAssertions.assertTrue(t < 90, "Numbers are small");
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread t : threads) {
+            t.join();
+        }
+        SoftAssertionFailuresError error = assertThrows(SoftAssertionFailuresError.class, HardToSoft::endContext,
+                "Failures of child threads are reported");
+        assertEquals(40, error.getData().getFailuresCount(), "All failures of the child threads are merged");
+        assertEquals(360, error.getData().getSuccessCounts().get("Numbers are small"),
+                "All successes of the child threads are merged");
+        assertEquals(3, error.getFailures().size(), "Storage limit is respected when merging");
+        AtomicBoolean hardAfterEnd = new AtomicBoolean();
+        Thread after = new Thread(() -> hardAfterEnd.set(HardToSoft.isHardAssert()));
+        after.start();
+        after.join();
+        assertTrue(hardAfterEnd.get(), "Threads use hard assertions after the context ended");
+    }
+
+    @Test
+    public void inheritedContextTest() throws InterruptedException {
+        HardToSoft.startSoftContext(3, 3, false, false, false, -1, new StackTraceSanitizer());
+        AtomicBoolean ownFailures = new AtomicBoolean();
+        Thread child = new Thread(() -> {
+            HardToSoft.startSoftContext(3, 3, false, false, false, -1, new StackTraceSanitizer());
+            SoftAssertions.assertTrue(false, "Child context");
+            try {
+                HardToSoft.endContext();
+            }
+            catch (SoftAssertionFailuresError ex) {
+                ownFailures.set(true);
+            }
+        });
+        child.start();
+        child.join();
+        assertTrue(ownFailures.get(), "A thread can replace an inherited context with its own");
+        SoftAssertions.assertTrue(true, "Parent context");
+        SoftAssertionResult result = HardToSoft.endContext();
+        assertEquals(Set.of("Parent context"), result.getData().getSuccessCounts().keySet(),
+                "Assertions of the child context are not recorded in the parent context");
+
+        CountDownLatch ended = new CountDownLatch(1);
+        AtomicBoolean hardInNewContext = new AtomicBoolean();
+        HardToSoft.startSoftContext(3, 3, false, false, false, -1, new StackTraceSanitizer());
+        Thread worker = new Thread(() -> {
+            try {
+                ended.await();
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            hardInNewContext.set(HardToSoft.isHardAssert());
+        });
+        worker.start();
+        assertThrows(NoAssertionsPerformedException.class, HardToSoft::endContext);
+        HardToSoft.startSoftContext(3, 3, false, true, false, -1, new StackTraceSanitizer());
+        ended.countDown();
+        worker.join();
+        HardToSoft.endContext();
+        assertTrue(hardInNewContext.get(), "An ended inherited context is ignored, even if other contexts are active");
+    }
+
+    @Test
+    public void endContextRaceTest() throws InterruptedException {
+        for (int round = 0; round < 50; round++) {
+            HardToSoft.startSoftContext(10, 3, false, false, false, -1, new StackTraceSanitizer());
+            CountDownLatch started = new CountDownLatch(1);
+            AtomicInteger attempts = new AtomicInteger();
+            AtomicInteger hardFailures = new AtomicInteger();
+            Thread worker = new Thread(() -> {
+                while (hardFailures.get() == 0) {
+                    attempts.incrementAndGet();
+                    try {
+                        SoftAssertions.assertTrue(false, "Worker");
+                    }
+                    catch (AssertionFailedError afe) {
+                        hardFailures.incrementAndGet();
+                    }
+                    started.countDown();
+                }
+            });
+            worker.start();
+            started.await();
+            SoftAssertionFailuresError error = assertThrows(SoftAssertionFailuresError.class, HardToSoft::endContext);
+            worker.join();
+            int recorded = error.getData().getFailureCounts().getOrDefault("Worker", 0);
+            assertEquals(attempts.get(), recorded + hardFailures.get(),
+                    "Every assertion of the worker is either recorded or thrown after the context has ended");
+        }
+    }
+
+    private static final AtomicInteger SUPPLIER_CALLS = new AtomicInteger();
+
+    @Test
+    public void mutableSupplierTest() {
+        HardToSoft.startSoftContext(3, 3, false, false, false, -1, new StackTraceSanitizer());
+        SUPPLIER_CALLS.set(0);
+        for (int t=0; t < 10; t++) {
+            SoftAssertions.assertTrue(true, () -> "Call " + (SUPPLIER_CALLS.incrementAndGet() % 2));
+        }
+        assertEquals(10, SUPPLIER_CALLS.get(), "Suppliers are called when the assertion is reported");
+        SoftAssertionData data = HardToSoft.endContext().getData();
+        assertEquals(5, data.getSuccessCounts().get("Call 0"), "Successes are counted per produced message");
+        assertEquals(5, data.getSuccessCounts().get("Call 1"), "Successes are counted per produced message");
+    }
+
+    @Test
+    public void capturingSupplierTest() {
+        HardToSoft.startSoftContext(3, 3, false, false, false, -1, new StackTraceSanitizer());
+        for (int t=0; t < 10; t++) {
+            int i = t % 2;
+            SoftAssertions.assertTrue(t < 8, () -> "Case " + i);
+        }
+        SoftAssertions.assertTrue(true, (Supplier<String>) null);
+        SoftAssertionData data = assertThrows(SoftAssertionFailuresError.class, HardToSoft::endContext).getData();
+        assertEquals(4, data.getSuccessCounts().get("Case 0"), "Successes are counted per message");
+        assertEquals(4, data.getSuccessCounts().get("Case 1"), "Successes are counted per message");
+        assertEquals(1, data.getFailureCounts().get("Case 0"), "Failures use the same message as successes");
+        assertEquals(1, data.getFailureCounts().get("Case 1"), "Failures use the same message as successes");
+        assertEquals(1, data.getSuccessCounts().get("Assertion without a description"),
+                "A null supplier is counted without a message");
+    }
+
+    @Test
+    public void compactFailuresTest() {
+        SoftAssertionData data = new SoftAssertionData(5, true, 20, -1);
+        List<Integer> large = Collections.nCopies(10000, 42);
+        for (int t=0; t < 1000; t++) {
+            data.reportFailure(new AssertionFailedError("Lists are equal", List.of(t), large), "Lists");
+            data.reportFailure(new AssertionFailedError("Is true", true, false), "Booleans");
+        }
+        List<AssertionFailedError> stored = data.getFailures().get("Lists");
+        assertEquals(5, stored.size(), "A sample of the failures is stored");
+        assertEquals(1000, data.getFailureCounts().get("Lists"), "All failures are counted");
+        for (AssertionFailedError afe : stored) {
+            assertTrue(afe.getActual().getStringRepresentation().length() < 100, "Values are capped");
+            assertNull(afe.getCause(), "Compact failures have no cause");
+            assertTrue(afe.getStackTrace().length <= 8, "Stack traces are trimmed");
+            assertEquals(TestSoftAssertionData.class.getName(), afe.getStackTrace()[0].getClassName(),
+                    "Stack traces start at the test code");
+        }
+        assertTrue(stored.stream().anyMatch(afe -> !afe.getExpected().getStringRepresentation().startsWith("[0")),
+                "Later failures are sampled as well");
+        AssertionFailedError bool = data.getFailures().get("Booleans").get(0);
+        assertEquals(Boolean.class, bool.getExpected().getType(), "Boolean values are kept");
+    }
+
+    @Test
+    public void memoryBudgetTest() {
+        SoftAssertionData data = new SoftAssertionData(100, false, 100, 2000);
+        for (int t=0; t < 100; t++) {
+            data.reportFailure(new AssertionFailedError("Strings are equal", "a".repeat(100), "b".repeat(100)),
+                    "Strings");
+        }
+        int stored = data.getFailures().get("Strings").size();
+        assertTrue(stored > 0 && stored < 10, "The memory budget limits the stored failures");
+        assertEquals(100, data.getFailuresCount(), "All failures are counted");
+    }
+
+    @Test
+    public void reportLimitTest() {
+        SoftAssertionData data = new SoftAssertionData(10);
+        for (int t=0; t < 100; t++) {
+            data.reportSuccess("Message " + t);
+            data.reportFailure(new AssertionFailedError("Values are equal", t, t + 1), "Message " + t);
+        }
+        SoftAssertionTextLayout layout = new SoftAssertionTextLayout(5, false, -1, null);
+        String full = layout.getReport(data);
+        String limited = layout.getReport(data, 500);
+        assertEquals(full, layout.getReport(data, full.length()), "The report is complete if it fits");
+        assertTrue(limited.startsWith(full.substring(0, 500)), "The limited report is a prefix of the full report");
+        assertTrue(limited.length() < 600, "The report is cut off after the limit");
+    }
+
+    @Test
+    public void jsonReportTest() {
+        SoftAssertionData data = new SoftAssertionData(10);
+        data.reportSuccess("b");
+        data.reportSuccess("a \"quoted\"");
+        data.reportFailure(new AssertionFailedError("Values are equal", "x\ny", 2), "a \"quoted\"");
+        data.reportFailure(new AssertionFailedError("Values are equal", 3, 4), "a \"quoted\"");
+        data.reportException(new IllegalStateException());
+        String expected = "{\"successes\":2,\"failures\":2,\"exceptions\":1,\"messages\":["
+                + "{\"message\":\"a \\\"quoted\\\"\",\"successes\":1,\"failures\":2,"
+                + "\"samples\":[{\"expected\":\"x\\ny\",\"actual\":\"2\"}]},"
+                + "{\"message\":\"b\",\"successes\":1,\"failures\":0,\"samples\":[]}],"
+                + "\"exceptionTypes\":[{\"type\":\"java.lang.IllegalStateException\",\"count\":1}]}";
+        assertEquals(expected, new SoftAssertionJsonLayout(1).getReport(data), "Structured report is correct");
+    }
+
+}
@@ -15,10 +15,14 @@
 
 package com.github.pcbouman_eur.testing.soft_assert.test;
 
+import com.github.pcbouman_eur.testing.soft_assert.SoftAssertExtension;
+import com.github.pcbouman_eur.testing.soft_assert.SoftAssertionFailuresError;
 import org.junit.jupiter.api.Test;
 import org.junit.platform.engine.TestTag;
+import org.junit.platform.engine.reporting.ReportEntry;
 import org.junit.platform.launcher.Launcher;
 import org.junit.platform.launcher.LauncherDiscoveryRequest;
+import org.junit.platform.launcher.TestExecutionListener;
 import org.junit.platform.launcher.TestIdentifier;
 import org.junit.platform.launcher.TestPlan;
 import org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder;
@@ -59,6 +63,35 @@ public class TestSoftAssertions {
         }
     }
 
+    @Test
+    public void testAggregatedInvocations() {
+        LauncherDiscoveryRequest request = LauncherDiscoveryRequestBuilder.request()
+                .selectors(selectClass(AggregateTestClass.class))
+                .build();
+        Launcher launcher = LauncherFactory.create();
+        TestPlan testPlan = launcher.discover(request);
+        SummaryGeneratingListener listener = new SummaryGeneratingListener();
+        List<ReportEntry> entries = new ArrayList<>();
+        TestExecutionListener reportListener = new TestExecutionListener() {
+            @Override
+            public void reportingEntryPublished(TestIdentifier testIdentifier, ReportEntry entry) {
+                entries.add(entry);
+            }
+        };
+        launcher.registerTestExecutionListeners(listener, reportListener);
+        launcher.execute(testPlan);
+        TestExecutionSummary summary = listener.getSummary();
+        assertEquals(10L, summary.getTestsSucceededCount(), "All invocations succeed individually");
+        assertEquals(1L, summary.getContainersFailedCount(), "The consolidated context fails the test template");
+        SoftAssertionFailuresError error = (SoftAssertionFailuresError) summary.getFailures().get(0).getException();
+        assertEquals(5, error.getData().getFailuresCount(), "Failures of all invocations are consolidated");
+        assertEquals(10, error.getData().getTotalCounts().get("Repetition is positive"),
+                "Successes of all invocations are consolidated");
+        assertEquals(1L, entries.stream()
+                .filter(e -> e.getKeyValuePairs().containsKey(SoftAssertExtension.STRUCTURED_REPORT_KEY))
+                .count(), "A single structured report is published");
+    }
+
     private void checkFailure(String testTag, Throwable t) {
         String[] tags  = testTag.split("\\s+,\\s+");
         for (String tag : tags) {
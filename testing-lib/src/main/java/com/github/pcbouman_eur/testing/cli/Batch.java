@@ -0,0 +1,384 @@
+/* Copyright 2025 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.github.pcbouman_eur.testing.cli;
+
+import com.github.pcbouman_eur.testing.cli.util.AutogradeV2JsonWriter;
+import com.github.pcbouman_eur.testing.cli.util.JUnitLegacyXMLWriter;
+import com.github.pcbouman_eur.testing.cli.util.TestDataListener;
+import com.github.pcbouman_eur.testing.compiling.CompilationCache;
+import com.github.pcbouman_eur.testing.compiling.TeacherAwareCompiler;
+import com.github.pcbouman_eur.testing.compiling.TeacherCompileJob;
+import com.github.pcbouman_eur.testing.compiling.TeacherCompileResult;
+import org.junit.platform.launcher.Launcher;
+import org.junit.platform.launcher.TestPlan;
+import org.junit.platform.launcher.core.LauncherFactory;
+import org.junit.platform.launcher.listeners.SummaryGeneratingListener;
+import org.junit.platform.launcher.listeners.TestExecutionSummary;
+import picocli.CommandLine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Permission;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Command that compiles and tests many submissions in a single JVM.
+ *
+ * Every directory in the submissions directory is treated as the student sources of one submission. The sources
+ * are compiled in memory together with the provided and teacher sources, in the same two phases as the compile
+ * command. The compiled classes of each submission are loaded by their own class loader, so that submissions do not
+ * share static state, after which the tests are run and a report is written for each submission. Submissions are
+ * graded in parallel by a bounded number of workers.
+ *
+ * Output to standard out and standard error is captured per submission, by the thread that grades it and the
+ * threads it starts, and is written to a separate file for each submission. Grading a submission is stopped when it
+ * takes longer than the timeout. Code of a submission that ignores being interrupted after a timeout keeps running
+ * in the background, together with its class loader, so the batch is stopped with an error once more submissions
+ * than there are workers could not be stopped.
+ *
+ * Calls to System.exit by student code are refused by installing a security manager. This API is deprecated for
+ * removal: JDK 17 prints a warning when it is used, and JDK 18 and later refuse to install a security manager unless
+ * the JVM is started with -Djava.security.manager=allow. Without a security manager, a submission that calls
+ * System.exit stops the complete batch, and the compile and run commands should be used instead, which grade every
+ * submission in its own process.
+ */
+
+@CommandLine.Command(name = "batch", mixinStandardHelpOptions = true,
+        description = "Compile and test all submissions in a directory, writing a report for each submission")
+public class Batch implements Callable<Integer> {
+
+    /**
+     * Suffix of the file that contains the output of a submission
+     */
+    public static final String OUTPUT_SUFFIX = ".output.txt";
+
+    /**
+     * Maximum number of bytes of output that is written for a single submission
+     */
+    private static final long OUTPUT_LIMIT = 1 << 20;
+
+    /**
+     * Number of milliseconds a submission gets to stop after it is interrupted due to a timeout
+     */
+    private static final long STOP_GRACE_MILLIS = 1000;
+
+    @CommandLine.Parameters(paramLabel = "SUBMISSIONS",
+            description = "Directory containing a directory with the sources of each submission")
+    private Path submissions;
+
+    @CommandLine.Option(names = {"--class", "-c"}, description = "Names of classes containing testcases to run",
+            required = true)
+    private List<String> classNames;
+
+    @CommandLine.Option(names = {"--tag", "-t"}, description = "Run only tests with these tags")
+    private List<String> tags;
+
+    @CommandLine.Option(names = {"-p", "--providedSrc"}, description = "Sources provided to the students")
+    private List<Path> providedSrc;
+
+    @CommandLine.Option(names = {"-ts", "--teacherSrc"}, description = "Teacher sources, the directory in the " +
+            "FIXTURES environment variable is used if none are given")
+    private List<Path> teacherSrc;
+
+    @CommandLine.Option(names = {"-ap", "--allowPackages"}, description = "Allow package definitions in the code")
+    private boolean allowPackages;
+
+    @CommandLine.Option(names = {"-o", "--outputDir"}, description = "Directory to write the reports to " +
+            "(default: the submissions directory)")
+    private Path outputDir;
+
+    @CommandLine.Option(names = {"-j", "--json"}, description = "Writes AutotestV2 json files rather than XML")
+    private boolean useJson;
+
+    @CommandLine.Option(names = {"--cache"}, description = "Directory of a cache with earlier compilation results. " +
+            "Sources that did not change since they were compiled with the same options are not compiled again.")
+    private Path cacheDir;
+
+    @CommandLine.Option(names = {"-w", "--workers"},
+            description = "Number of submissions that are graded at the same time (default: number of processors)")
+    private int workers = Runtime.getRuntime().availableProcessors();
+
+    @CommandLine.Option(names = {"--timeout"}, defaultValue = "300",
+            description = "Maximum number of seconds to compile and test a submission (default: ${DEFAULT-VALUE})")
+    private long timeout;
+
+    @Override
+    @SuppressWarnings("removal")
+    public Integer call() throws Exception {
+        List<Path> folders;
+        try (Stream<Path> list = Files.list(submissions)) {
+            folders = list.filter(Files::isDirectory).sorted().collect(Collectors.toList());
+        }
+        Path reportDir = outputDir != null ? outputDir : submissions;
+        Files.createDirectories(reportDir);
+        CompilationCache cache = cacheDir == null ? null : new CompilationCache(cacheDir);
+
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        System.setOut(new PrintStream(new RoutingOutputStream(out), true, StandardCharsets.UTF_8));
+        System.setErr(new PrintStream(new RoutingOutputStream(err), true, StandardCharsets.UTF_8));
+
+        SecurityManager previousManager = System.getSecurityManager();
+        boolean exitGuard = installExitGuard(err);
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, workers));
+        int maxStuck = Math.max(1, workers);
+        AtomicInteger stuck = new AtomicInteger();
+        int failures = 0;
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (Path folder : folders) {
+                results.add(pool.submit(() -> {
+                    if (stuck.get() > maxStuck) {
+                        throw new IllegalStateException("batch stopped, " + stuck.get()
+                                + " submissions did not stop after a timeout");
+                    }
+                    // Submissions are graded in separate threads, so a worker can give up on a submission after the
+                    // timeout
+                    FutureTask<String> result = new FutureTask<>(() -> grade(folder, reportDir, cache));
+                    Thread runner = new Thread(result, "batch-" + folder.getFileName());
+                    runner.setDaemon(true);
+                    runner.start();
+                    try {
+                        return result.get(timeout, TimeUnit.SECONDS);
+                    }
+                    catch (TimeoutException ex) {
+                        result.cancel(true);
+                        runner.join(STOP_GRACE_MILLIS);
+                        if (runner.isAlive()) {
+                            stuck.incrementAndGet();
+                        }
+                        throw ex;
+                    }
+                }));
+            }
+            for (int i=0; i < folders.size(); i++) {
+                String name = folders.get(i).getFileName().toString();
+                try {
+                    out.println(name + ": " + results.get(i).get());
+                }
+                catch (ExecutionException ex) {
+                    failures++;
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof TimeoutException) {
+                        err.println(name + ": timed out after " + timeout + " seconds");
+                    }
+                    else if (cause instanceof IllegalStateException) {
+                        err.println(name + ": not graded, " + cause.getMessage());
+                    }
+                    else {
+                        if (cause instanceof ExecutionException) {
+                            cause = cause.getCause();
+                        }
+                        err.println(name + ": unable to grade submission: " + cause);
+                    }
+                }
+            }
+        }
+        finally {
+            pool.shutdown();
+            if (exitGuard) {
+                System.setSecurityManager(previousManager);
+            }
+            System.setOut(out);
+            System.setErr(err);
+        }
+        if (stuck.get() > maxStuck) {
+            err.println("Batch stopped: " + stuck.get() + " submissions kept running after a timeout. Grade the "
+                    + "remaining submissions with the compile and run commands, which use a separate process.");
+        }
+        return failures == 0 ? 0 : 1;
+    }
+
+    @SuppressWarnings("removal")
+    private static boolean installExitGuard(PrintStream err) {
+        try {
+            System.setSecurityManager(new NoExitSecurityManager());
+            return true;
+        }
+        catch (UnsupportedOperationException | SecurityException ex) {
+            err.println("Unable to prevent submissions from calling System.exit: " + ex.getMessage());
+            err.println("A submission that calls System.exit stops the batch. On JDK 18 and later, start the JVM "
+                    + "with -Djava.security.manager=allow to prevent this.");
+            return false;
+        }
+    }
+
+    private String grade(Path folder, Path reportDir, CompilationCache cache) throws Exception {
+        String name = folder.getFileName().toString();
+        TeacherCompileJob job = Compile.createJob(providedSrc, List.of(folder), teacherSrc, null,
+                System.getenv("FIXTURES"));
+        TeacherAwareCompiler tac = new TeacherAwareCompiler(job, Compile.getCompilerOptions(null, false), cache);
+        TeacherCompileResult result = tac.compileInMemory(allowPackages);
+        if (!result.getOutput().isBlank()) {
+            Files.writeString(reportDir.resolve(name + Compile.DEFAULT_COMPILE_LOG), result.getOutput(),
+                    StandardCharsets.UTF_8);
+        }
+        if (!result.isOk()) {
+            return "compilation failed";
+        }
+
+        Thread currentThread = Thread.currentThread();
+        ClassLoader previous = currentThread.getContextClassLoader();
+        currentThread.setContextClassLoader(result.createClassLoader(previous));
+        SubmissionOutput output = new SubmissionOutput(reportDir.resolve(name + OUTPUT_SUFFIX));
+        RoutingOutputStream.TARGET.set(output);
+        try {
+            Launcher launcher = LauncherFactory.create();
+            TestPlan testPlan = launcher.discover(TestRunner.getRequest(classNames, tags));
+            SummaryGeneratingListener sumListener = new SummaryGeneratingListener();
+            TestDataListener listener = new TestDataListener();
+            launcher.execute(testPlan, sumListener, listener);
+
+            if (!useJson) {
+                JUnitLegacyXMLWriter.writeXml(new File(reportDir.toFile(), name + ".xml"), listener);
+            }
+            else {
+                AutogradeV2JsonWriter.write(new File(reportDir.toFile(), name + ".json"), listener);
+            }
+            TestExecutionSummary summary = sumListener.getSummary();
+            return summary.getTestsSucceededCount() + " of " + summary.getTestsFoundCount() + " tests successful";
+        }
+        finally {
+            RoutingOutputStream.TARGET.remove();
+            output.close();
+            currentThread.setContextClassLoader(previous);
+        }
+    }
+
+    /**
+     * Stream that writes to the output of the submission that is graded by the current Thread, or to the original
+     * stream if the current Thread does not grade a submission. Threads started by a submission inherit its output.
+     */
+    private static final class RoutingOutputStream extends OutputStream {
+
+        private static final InheritableThreadLocal<OutputStream> TARGET = new InheritableThreadLocal<>();
+
+        private final OutputStream original;
+
+        private RoutingOutputStream(OutputStream original) {
+            this.original = original;
+        }
+
+        private OutputStream target() {
+            OutputStream target = TARGET.get();
+            return target != null ? target : original;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            target().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            target().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target().flush();
+        }
+    }
+
+    /**
+     * Output of a single submission. The file is only created once something is written, and output beyond the
+     * limit is dropped. Output written after the submission is graded is dropped as well.
+     */
+    private static final class SubmissionOutput extends OutputStream {
+
+        private final Path file;
+        private OutputStream out;
+        private long written;
+        private boolean closed;
+
+        private SubmissionOutput(Path file) {
+            this.file = file;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            int allowed = (int) Math.min(len, OUTPUT_LIMIT - written);
+            if (closed || allowed <= 0) {
+                return;
+            }
+            if (out == null) {
+                out = Files.newOutputStream(file);
+            }
+            out.write(b, off, allowed);
+            written += allowed;
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            if (out != null && !closed) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            closed = true;
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Security manager that allows everything, except for stopping the JVM
+     */
+    @SuppressWarnings("removal")
+    private static final class NoExitSecurityManager extends SecurityManager {
+
+        @Override
+        public void checkPermission(Permission perm) {
+            // All permissions are granted
+        }
+
+        @Override
+        public void checkPermission(Permission perm, Object context) {
+            // All permissions are granted
+        }
+
+        @Override
+        public void checkExit(int status) {
+            throw new SecurityException("System.exit is not allowed while grading submissions");
+        }
+    }
+}
@@ -15,15 +15,17 @@
 
 package com.github.pcbouman_eur.testing.cli;
 
+import com.github.pcbouman_eur.testing.cli.util.CompileDaemon;
+import com.github.pcbouman_eur.testing.compiling.CompilationCache;
 import com.github.pcbouman_eur.testing.compiling.TeacherAwareCompiler;
 import com.github.pcbouman_eur.testing.compiling.TeacherAwareDiagnostic;
 import com.github.pcbouman_eur.testing.compiling.TeacherCompileJob;
 import com.github.pcbouman_eur.testing.compiling.TeacherCompileResult;
-import org.checkerframework.checker.units.qual.A;
 import picocli.CommandLine;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -31,6 +33,7 @@ import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
 
 /**
@@ -47,7 +50,7 @@ import java.util.concurrent.Callable;
  * 1) The provided source code and student source code is compiled together. If any compilation errors occur,
  *    these are presented to the student as there mistake, since it occurs in code they can also work with on
  *    their own device. Only if this step occurs without errors, the second phase is used.
- * 2) The provided source code, student source code and teacher source code are compiled together. Any compilation
+ * 2) The teacher source code is compiled against the classes produced in the first phase. Any compilation
  *    errors now must occur in the teacher source code, which would typically indicate the student made a mistake
  *    in implementing the specification of the assignment correctly. Hence, the output of the compiler is enhanced
  *    with a disclaimer that the student should carefully check if their code adheres to the specification.
@@ -62,6 +65,10 @@ public class Compile implements Callable<Integer> {
 
     public static final String UNCHECKED_ARG = "-Xlint:unchecked";
 
+    // Options of the compiler with a path or a list of paths as their value
+    private static final Set<String> PATH_OPTIONS = Set.of("-cp", "-classpath", "--class-path", "-sourcepath",
+            "--source-path", "-processorpath", "--processor-path", "--module-path", "--upgrade-module-path", "-d");
+
     @CommandLine.Unmatched
     List<String> compilerOptions;
 
@@ -105,8 +112,160 @@ public class Compile implements Callable<Integer> {
     @CommandLine.Option(names={"-v", "--verbose"}, description="Verbose compiler output")
     private boolean verbose;
 
+    @CommandLine.Option(names={"--daemon"}, description="Send the compile job to a compile daemon started " +
+            "with the serve command. If no daemon is running or the daemon refuses the job, the sources are " +
+            "compiled by this process instead.")
+    private boolean daemon;
+
+    @CommandLine.Option(names={"--daemonFile"}, defaultValue = CompileDaemon.DEFAULT_DAEMON_FILE,
+            description="File with the connection details of the compile daemon (default: ${DEFAULT-VALUE})")
+    private Path daemonFile;
+
+    @CommandLine.Option(names={"--cache"}, description="Directory of a cache with earlier compilation results. " +
+            "Sources that did not change since they were compiled with the same options are not compiled again.")
+    private Path cacheDir;
+
+    @CommandLine.Spec
+    private CommandLine.Model.CommandSpec spec;
+
+    private Path workDir;
+    private String fixtures = System.getenv("FIXTURES");
+    private PrintStream out = System.out;
+    private PrintStream err = System.err;
+
+    /**
+     * Lets this command run on behalf of another process, such as a client of the compile daemon
+     * @param workDir the working directory of the other process, relative paths are resolved against it
+     * @param fixtures the value of the FIXTURES environment variable of the other process, can be null
+     * @param out the stream to write standard output to
+     * @param err the stream to write standard error to
+     */
+    void runFor(Path workDir, String fixtures, PrintStream out, PrintStream err) {
+        this.workDir = workDir;
+        this.fixtures = fixtures;
+        this.out = out;
+        this.err = err;
+    }
+
     @Override
     public Integer call() throws Exception {
+        if (daemon) {
+            // The expanded arguments of this command only contain the arguments that follow its name, with argument
+            // files already expanded, unlike the original arguments that also contain those of the parent command
+            List<String> args = new ArrayList<>(spec.commandLine().getParseResult().expandedArgs());
+            args.remove("--daemon");
+            Integer exitCode = CompileDaemon.send(daemonFile, args, out, err);
+            if (exitCode != null) {
+                return exitCode;
+            }
+        }
+
+        List<String> options = getCompilerOptions(resolvePathOptions(compilerOptions), noUnchecked);
+        TeacherCompileJob job = createJob(resolve(providedSrc), resolve(studentSrc), resolve(teacherSrc), workDir,
+                fixtures);
+        if (verbose) {
+            out.println(job.getSummary());
+        }
+        CompilationCache cache = cacheDir == null ? null : new CompilationCache(resolve(cacheDir.toFile()).toPath());
+        TeacherAwareCompiler tac = new TeacherAwareCompiler(job, options, cache);
+        TeacherCompileResult result = tac.compile(resolve(classDir), allowPackages);
+        if (verbose) {
+            out.println(result.getLog());
+        }
+
+        String basePrefix = workDir == null ? "" : workDir + File.separator;
+        String output = result.getOutput();
+        if (workDir != null) {
+            output = output.replace(basePrefix, "");
+        }
+        if (!suppressStdErr && !output.isBlank()) {
+                err.print(output);
+        }
+
+        if (linterOutput != null) {
+            try (PrintWriter pw = new PrintWriter(resolve(linterOutput))) {
+                for (TeacherAwareDiagnostic d : result.getDiagnostics()) {
+                    if (!d.isTeacherCode()) {
+                        pw.println(d.toGenericLinterFeedback(basePrefix));
+                    }
+                }
+            }
+        }
+
+        if (compileOutput != null && !output.isBlank()) {
+            try {
+                Files.writeString(resolve(compileOutput).toPath(), output, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            }
+            catch (IOException ex) {
+                err.println("Error while writing compilation output: "+ex.getMessage());
+            }
+        }
+
+        if (result.isOk()) {
+            return 0;
+        }
+        return 1;
+    }
+
+    private List<String> resolvePathOptions(List<String> options) {
+        if (workDir == null || options == null) {
+            return options;
+        }
+        List<String> result = new ArrayList<>();
+        for (int i=0; i < options.size(); i++) {
+            String option = options.get(i);
+            int split = option.indexOf('=');
+            if (PATH_OPTIONS.contains(option) && i + 1 < options.size()) {
+                result.add(option);
+                result.add(resolvePaths(options.get(++i)));
+            }
+            else if (option.startsWith("--") && split > 0 && PATH_OPTIONS.contains(option.substring(0, split))) {
+                result.add(option.substring(0, split + 1) + resolvePaths(option.substring(split + 1)));
+            }
+            else {
+                result.add(option);
+            }
+        }
+        return result;
+    }
+
+    private String resolvePaths(String paths) {
+        List<String> result = new ArrayList<>();
+        for (String path : paths.split(File.pathSeparator)) {
+            result.add(path.isEmpty() ? path : workDir.resolve(path).toString());
+        }
+        return String.join(File.pathSeparator, result);
+    }
+
+    private File resolve(File file) {
+        return workDir == null ? file : workDir.resolve(file.toPath()).toFile();
+    }
+
+    private List<Path> resolve(List<Path> paths) {
+        if (workDir == null || paths == null) {
+            return paths;
+        }
+        List<Path> result = new ArrayList<>();
+        for (Path p : paths) {
+            result.add(workDir.resolve(p));
+        }
+        return result;
+    }
+
+    /**
+     * Creates a compile job for the given sources. If no student sources are given, the working directory is used.
+     * If no teacher sources are given, the fixtures directory is used if it is defined.
+     * @param providedSrc the provided sources, can be null
+     * @param studentSrc the student sources, can be null
+     * @param teacherSrc the teacher sources, can be null
+     * @param workDir the working directory, or null to use the current directory of this process
+     * @param fixtures the directory with fixtures, typically the FIXTURES environment variable, can be null
+     * @return the compile job for these sources
+     * @throws IOException if the source directories could not be searched for source files
+     */
+    static TeacherCompileJob createJob(List<Path> providedSrc, List<Path> studentSrc, List<Path> teacherSrc,
+                                       Path workDir, String fixtures) throws IOException {
         List<Path> provided = new ArrayList<>();
         List<Path> student = new ArrayList<>();
         List<Path> teacher = new ArrayList<>();
@@ -118,19 +277,28 @@ public class Compile implements Callable<Integer> {
         }
         else {
             // Use the local directory instead
-            student.add(Path.of("."));
+            student.add(workDir == null ? Path.of(".") : workDir.resolve("."));
         }
         if (teacherSrc != null && !teacherSrc.isEmpty()) {
             teacher.addAll(teacherSrc);
         }
         else {
             // See if FIXTURES is defined as an environment variables and add that if it is.
-            String fixtures = System.getenv("FIXTURES");
             if (fixtures != null) {
-                teacher.add(Path.of(fixtures));
+                teacher.add(workDir == null ? Path.of(fixtures) : workDir.resolve(fixtures));
             }
         }
 
+        return TeacherCompileJob.forSources(provided, student, teacher);
+    }
+
+    /**
+     * Constructs the options passed to the compiler
+     * @param compilerOptions the additional options given on the command line, can be null
+     * @param noUnchecked whether -Xlint:unchecked should not be added to the options
+     * @return the list of compiler options
+     */
+    static List<String> getCompilerOptions(List<String> compilerOptions, boolean noUnchecked) {
         List<String> options = new ArrayList<>();
         // compilerOptions != null ? compilerOptions : List.of();
         if (compilerOptions != null) {
@@ -139,44 +307,6 @@ public class Compile implements Callable<Integer> {
         if (!noUnchecked && !options.contains(UNCHECKED_ARG)) {
             options.add(UNCHECKED_ARG);
         }
-        TeacherCompileJob job = TeacherCompileJob.forSources(provided, student, teacher);
-        if (verbose) {
-            System.out.println(job.getSummary());
-        }
-        TeacherAwareCompiler tac = new TeacherAwareCompiler(job, options);
-        TeacherCompileResult result = tac.compile(classDir, allowPackages);
-        if (verbose) {
-            System.out.println(result.getLog());
-        }
-
-        String err = result.getOutput();
-        if (!suppressStdErr && !err.isBlank()) {
-                System.err.print(err);
-        }
-
-        if (linterOutput != null) {
-            try (PrintWriter pw = new PrintWriter(linterOutput)) {
-                for (TeacherAwareDiagnostic d : result.getDiagnostics()) {
-                    if (!d.isTeacherCode()) {
-                        pw.println(d.toGenericLinterFeedback());
-                    }
-                }
-            }
-        }
-
-        if (compileOutput != null && !err.isBlank()) {
-            try {
-                Files.writeString(compileOutput.toPath(), err, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
-                        StandardOpenOption.TRUNCATE_EXISTING);
-            }
-            catch (IOException ex) {
-                System.err.println("Error while writing compilation output: "+ex.getMessage());
-            }
-        }
-
-        if (result.isOk()) {
-            return 0;
-        }
-        return 1;
+        return options;
     }
 }
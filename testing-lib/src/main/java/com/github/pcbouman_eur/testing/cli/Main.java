@@ -19,7 +19,7 @@ import picocli.CommandLine;
 
 @CommandLine.Command(description = "Testing tools for student code", name="test", mixinStandardHelpOptions = true,
     subcommands = {TestRunner.class, ChoicesRunner.class, Install.class, Compile.class, CompileCheck.class,
-                    CheckStyle.class})
+                    CheckStyle.class, Serve.class, Batch.class})
 public class Main {
 
     public static void main(String [] args) throws Exception {
@@ -0,0 +1,161 @@
+/* Copyright 2025 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.github.pcbouman_eur.testing.cli;
+
+import com.github.pcbouman_eur.testing.cli.util.CompileDaemon;
+import com.github.pcbouman_eur.testing.compiling.InMemoryFileManager;
+import picocli.CommandLine;
+
+import javax.tools.*;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Command that starts a compile daemon. The daemon keeps a warmed up compiler in a long running JVM, and runs
+ * the compile jobs that are sent to it by the compile command using the --daemon option. This avoids the start-up
+ * and warm-up time of the compiler for every submission, which dominates the time needed to compile small
+ * assignments.
+ *
+ * The daemon resolves relative paths against the working directory of the client and uses the FIXTURES
+ * environment variable of the client. The class path used for compilation is the class path of the daemon, so
+ * jobs of clients with a different class path are refused, after which the client compiles the sources itself.
+ * Relative entries of the class path, such as the current directory, are resolved against the working directory
+ * of the client and the daemon respectively.
+ */
+
+@CommandLine.Command(name = "serve", mixinStandardHelpOptions = true,
+        description = "Start a compile daemon that runs the jobs of compile commands with the --daemon option")
+public class Serve implements Callable<Integer> {
+
+    private static final int REQUEST_TIMEOUT = 10000;
+
+    private static final String WARMUP_SOURCE = "import java.util.*;\n" +
+            "public class Warmup { List<String> list = new ArrayList<>(); }";
+
+    @CommandLine.Option(names={"-df", "--daemonFile"}, defaultValue = CompileDaemon.DEFAULT_DAEMON_FILE,
+            description="File to write the connection details of the compile daemon to (default: ${DEFAULT-VALUE})")
+    private Path daemonFile;
+
+    @CommandLine.Option(names={"-p", "--port"}, defaultValue = "0",
+            description="Loopback port to listen on, 0 picks a free port (default: ${DEFAULT-VALUE})")
+    private int port;
+
+    @CommandLine.Option(names={"-w", "--workers"},
+            description="Number of compile jobs that can run at the same time (default: number of processors)")
+    private int workers = Runtime.getRuntime().availableProcessors();
+
+    private final String classPath = CompileDaemon.resolveClassPath(System.getProperty("java.class.path", ""),
+            Path.of("").toAbsolutePath());
+
+    @Override
+    public Integer call() throws Exception {
+        warmUp();
+
+        byte [] secret = new byte[16];
+        new SecureRandom().nextBytes(secret);
+        StringBuilder token = new StringBuilder();
+        for (byte b : secret) {
+            token.append(String.format("%02x", b));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, workers));
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            CompileDaemon.writeDaemonFile(daemonFile, server.getLocalPort(), token.toString());
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    Files.deleteIfExists(daemonFile);
+                }
+                catch (IOException ignored) {
+                    // The JVM is shutting down, nothing sensible can be done about this
+                }
+            }));
+            System.out.println("Compile daemon listening on port " + server.getLocalPort());
+            while (!server.isClosed()) {
+                Socket socket = server.accept();
+                pool.submit(() -> handle(socket, token.toString()));
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+        return 0;
+    }
+
+    private void handle(Socket socket, String token) {
+        try (socket) {
+            // A client that does not send its job should not occupy a worker
+            socket.setSoTimeout(REQUEST_TIMEOUT);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            CompileDaemon.Request request = CompileDaemon.readRequest(in, token);
+            if (request == null) {
+                return;
+            }
+            if (!request.getClassPath().equals(classPath)) {
+                System.err.println("Refused compile job from " + request.getWorkDir() + ", as its class path " +
+                        "differs from the class path of the daemon");
+                return;
+            }
+            ByteArrayOutputStream stdOut = new ByteArrayOutputStream();
+            ByteArrayOutputStream stdErr = new ByteArrayOutputStream();
+            PrintStream out = new PrintStream(stdOut, true, StandardCharsets.UTF_8);
+            PrintStream err = new PrintStream(stdErr, true, StandardCharsets.UTF_8);
+
+            Compile compile = new Compile();
+            compile.runFor(request.getWorkDir(), request.getFixtures(), out, err);
+            CommandLine cli = new CommandLine(compile);
+            cli.setOut(new PrintWriter(out, true));
+            cli.setErr(new PrintWriter(err, true));
+            int exitCode = cli.execute(request.getArgs().toArray(String[]::new));
+
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            CompileDaemon.writeResponse(dos, exitCode, stdOut.toString(StandardCharsets.UTF_8),
+                    stdErr.toString(StandardCharsets.UTF_8));
+        }
+        catch (IOException | RuntimeException ex) {
+            System.err.println("Error while handling compile job: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Compiles a small class in memory, so that the classes of the compiler are loaded and warmed up before the
+     * first compile job arrives.
+     */
+    private static void warmUp() throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        JavaFileObject source = new SimpleJavaFileObject(URI.create("string:///Warmup.java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return WARMUP_SOURCE;
+            }
+        };
+        try (InMemoryFileManager fm = new InMemoryFileManager(
+                compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8))) {
+            compiler.getTask(null, fm, new DiagnosticCollector<>(), null, null, List.of(source)).call();
+        }
+    }
+}
@@ -19,6 +19,9 @@ import com.github.pcbouman_eur.testing.cli.util.AutogradeV2JsonWriter;
 import com.github.pcbouman_eur.testing.cli.util.ClassUtils;
 import com.github.pcbouman_eur.testing.cli.util.JUnitLegacyXMLWriter;
 import com.github.pcbouman_eur.testing.cli.util.TestDataListener;
+import com.github.pcbouman_eur.testing.compiling.TeacherAwareCompiler;
+import com.github.pcbouman_eur.testing.compiling.TeacherCompileJob;
+import com.github.pcbouman_eur.testing.compiling.TeacherCompileResult;
 import org.junit.platform.engine.discovery.ClassSelector;
 import org.junit.platform.engine.discovery.DiscoverySelectors;
 import org.junit.platform.launcher.*;
@@ -31,6 +34,7 @@ import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.concurrent.Callable;
 
@@ -68,6 +72,24 @@ public class TestRunner implements Callable<Void> {
                     "(only relevant when non-silent)")
     private boolean suppressOutputLocation;
 
+    @CommandLine.Option(names = {"-m", "--inMemory"},
+            description = "Compile the sources in memory before running the tests, without writing class files. " +
+                    "The sources are selected as in the compile command.")
+    private boolean inMemory;
+
+    @CommandLine.Option(names = {"-ps", "--providedSrc"}, description = "Provided sources to compile in memory")
+    private List<Path> providedSrc;
+
+    @CommandLine.Option(names = {"-ss", "--studentSrc"}, description = "Student sources to compile in memory")
+    private List<Path> studentSrc;
+
+    @CommandLine.Option(names = {"-ts", "--teacherSrc"}, description = "Teacher sources to compile in memory")
+    private List<Path> teacherSrc;
+
+    @CommandLine.Option(names = {"-ap", "--allowPackages"},
+            description = "Allow package definitions in the sources compiled in memory")
+    private boolean allowPackages;
+
     private void println(String str, PrintStream out) {
         if (!silent) {
             out.println(str);
@@ -86,13 +108,28 @@ public class TestRunner implements Callable<Void> {
 
         ClassUtils.initClassloader();
 
+        if (inMemory) {
+            TeacherCompileJob job = Compile.createJob(providedSrc, studentSrc, teacherSrc, null,
+                    System.getenv("FIXTURES"));
+            TeacherAwareCompiler tac = new TeacherAwareCompiler(job, Compile.getCompilerOptions(null, false));
+            TeacherCompileResult result = tac.compileInMemory(allowPackages);
+            if (!result.getOutput().isBlank()) {
+                err.print(result.getOutput());
+            }
+            if (!result.isOk()) {
+                err.println("Compilation failed, no tests were run");
+                return null;
+            }
+            ClassUtils.addCompiledClasses(result);
+        }
+
         if (dependencies != null) {
             for (String dependency : dependencies) {
                 ClassUtils.loadClass(dependency);
             }
         }
 
-        LauncherDiscoveryRequest request = getRequest();
+        LauncherDiscoveryRequest request = getRequest(classNames, tags);
 
         Launcher launcher = LauncherFactory.create();
         TestPlan testPlan = launcher.discover(request);
@@ -142,7 +179,14 @@ public class TestRunner implements Callable<Void> {
         return null;
     }
 
-    private LauncherDiscoveryRequest getRequest() {
+    /**
+     * Creates a request to run the tests in a number of test classes. The classes are loaded by the context
+     * class loader of the current thread.
+     * @param classNames the names of the classes containing the tests
+     * @param tags if not null or empty, only tests with one of these tags are run
+     * @return the request to run the selected tests
+     */
+    static LauncherDiscoveryRequest getRequest(List<String> classNames, List<String> tags) {
         ClassSelector[] classSelectors = classNames.stream()
                 .map(ClassUtils::loadClass)
                 .map(DiscoverySelectors::selectClass)
@@ -15,6 +15,8 @@
 
 package com.github.pcbouman_eur.testing.cli.util;
 
+import com.github.pcbouman_eur.testing.compiling.TeacherCompileResult;
+
 import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -43,6 +45,17 @@ public final class ClassUtils {
         }
     }
 
+    /**
+     * Makes the classes that were compiled in memory available through the context class loader of the current
+     * thread. Other classes are still loaded by the previous context class loader.
+     * @param result the result of an in-memory compilation
+     */
+    public static void addCompiledClasses(TeacherCompileResult result) {
+        Thread currentThread = Thread.currentThread();
+        ClassLoader currentCL = currentThread.getContextClassLoader();
+        currentThread.setContextClassLoader(result.createClassLoader(currentCL));
+    }
+
     public static Class<?> loadClass(String className) {
         try {
             return Thread.currentThread().getContextClassLoader().loadClass(className);
@@ -0,0 +1,236 @@
+/* Copyright 2025 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.github.pcbouman_eur.testing.cli.util;
+
+import java.io.*;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helper class for the communication between the compile command and a compile daemon started with the serve
+ * command.
+ *
+ * The daemon listens on a loopback socket. The port and a secret token are written to a daemon file that is only
+ * readable by its owner, so only processes of the same user can submit compile jobs. A client sends the token,
+ * its working directory, its class path, its FIXTURES environment variable and the arguments of the compile command.
+ * The daemon responds with the exit code and everything the command wrote to standard output and standard error.
+ * The daemon closes the connection without a response if it refuses a job, in which case the client compiles the
+ * sources itself.
+ */
+public final class CompileDaemon {
+
+    public static final String DEFAULT_DAEMON_FILE = "${sys:java.io.tmpdir}/sttest-compile-daemon";
+
+    private static final int CONNECT_TIMEOUT = 1000;
+    private static final int RESPONSE_TIMEOUT = 60000;
+    private static final int MAX_STRING_LENGTH = 1 << 26;
+
+    private CompileDaemon() {}
+
+    /**
+     * Sends the arguments of a compile command to a running compile daemon and copies its output
+     * @param daemonFile the file with the port and token of the daemon
+     * @param args the arguments of the compile command
+     * @param out the stream to copy the standard output of the command to
+     * @param err the stream to copy the standard error of the command to
+     * @return the exit code of the compile command, or null if no daemon could be reached
+     */
+    public static Integer send(Path daemonFile, List<String> args, PrintStream out, PrintStream err) {
+        if (!Files.isReadable(daemonFile)) {
+            return null;
+        }
+        try (Socket socket = new Socket()) {
+            List<String> lines = Files.readAllLines(daemonFile, StandardCharsets.UTF_8);
+            int port = Integer.parseInt(lines.get(0).trim());
+            String token = lines.get(1).trim();
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT);
+            // A daemon that hangs should not block the client, which compiles the sources itself instead
+            socket.setSoTimeout(RESPONSE_TIMEOUT);
+
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            Path workDir = Path.of("").toAbsolutePath();
+            writeString(dos, token);
+            writeString(dos, workDir.toString());
+            writeString(dos, resolveClassPath(System.getProperty("java.class.path", ""), workDir));
+            String fixtures = System.getenv("FIXTURES");
+            dos.writeBoolean(fixtures != null);
+            if (fixtures != null) {
+                writeString(dos, fixtures);
+            }
+            dos.writeInt(args.size());
+            for (String arg : args) {
+                writeString(dos, arg);
+            }
+            dos.flush();
+
+            DataInputStream dis = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            int exitCode = dis.readInt();
+            out.print(readString(dis));
+            err.print(readString(dis));
+            return exitCode;
+        }
+        catch (ConnectException | EOFException ex) {
+            // The daemon is no longer running or refused the job
+            return null;
+        }
+        catch (SocketTimeoutException ex) {
+            err.println("The compile daemon did not respond in time, compiling without the daemon");
+            return null;
+        }
+        catch (IOException | RuntimeException ex) {
+            err.println("Unable to use the compile daemon: " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Resolves the entries of a class path against a directory, so that class paths of processes with different
+     * working directories can be compared
+     * @param classPath the class path
+     * @param base the directory to resolve relative entries against
+     * @return the class path with absolute and normalized entries
+     */
+    public static String resolveClassPath(String classPath, Path base) {
+        List<String> entries = new ArrayList<>();
+        for (String entry : classPath.split(File.pathSeparator)) {
+            entries.add(base.resolve(entry).toAbsolutePath().normalize().toString());
+        }
+        return String.join(File.pathSeparator, entries);
+    }
+
+    /**
+     * Writes the file that clients use to find the daemon. The file is only readable by its owner if the file
+     * system supports this.
+     * @param daemonFile the file to write
+     * @param port the port the daemon listens on
+     * @param token the token clients have to send
+     * @throws IOException if the file could not be written
+     */
+    public static void writeDaemonFile(Path daemonFile, int port, String token) throws IOException {
+        Path dir = daemonFile.toAbsolutePath().getParent();
+        Path tmp;
+        try {
+            tmp = Files.createTempFile(dir, "sttest", ".tmp",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        catch (UnsupportedOperationException ex) {
+            tmp = Files.createTempFile(dir, "sttest", ".tmp");
+        }
+        Files.writeString(tmp, port + "\n" + token + "\n", StandardCharsets.UTF_8);
+        Files.move(tmp, daemonFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * A compile job received by the daemon
+     */
+    public static final class Request {
+
+        private final Path workDir;
+        private final String classPath;
+        private final String fixtures;
+        private final List<String> args;
+
+        private Request(Path workDir, String classPath, String fixtures, List<String> args) {
+            this.workDir = workDir;
+            this.classPath = classPath;
+            this.fixtures = fixtures;
+            this.args = args;
+        }
+
+        public Path getWorkDir() {
+            return workDir;
+        }
+
+        /**
+         * @return the class path of the client, with entries resolved against its working directory
+         */
+        public String getClassPath() {
+            return classPath;
+        }
+
+        public String getFixtures() {
+            return fixtures;
+        }
+
+        public List<String> getArgs() {
+            return args;
+        }
+    }
+
+    /**
+     * Reads a compile job sent by a client
+     * @param in the stream to read the job from
+     * @param token the token the client has to send
+     * @return the compile job, or null if the client did not send the correct token
+     * @throws IOException if the job could not be read
+     */
+    public static Request readRequest(DataInputStream in, String token) throws IOException {
+        byte [] received = readString(in).getBytes(StandardCharsets.UTF_8);
+        if (!MessageDigest.isEqual(received, token.getBytes(StandardCharsets.UTF_8))) {
+            return null;
+        }
+        Path workDir = Path.of(readString(in));
+        String classPath = readString(in);
+        String fixtures = in.readBoolean() ? readString(in) : null;
+        int count = in.readInt();
+        List<String> args = new ArrayList<>();
+        for (int i=0; i < count; i++) {
+            args.add(readString(in));
+        }
+        return new Request(workDir, classPath, fixtures, args);
+    }
+
+    /**
+     * Writes the outcome of a compile job to a client
+     * @param out the stream to write the outcome to
+     * @param exitCode the exit code of the compile command
+     * @param stdOut the standard output of the compile command
+     * @param stdErr the standard error of the compile command
+     * @throws IOException if the outcome could not be written
+     */
+    public static void writeResponse(DataOutputStream out, int exitCode, String stdOut, String stdErr)
+            throws IOException {
+        out.writeInt(exitCode);
+        writeString(out, stdOut);
+        writeString(out, stdErr);
+        out.flush();
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        byte [] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_STRING_LENGTH) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte [] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
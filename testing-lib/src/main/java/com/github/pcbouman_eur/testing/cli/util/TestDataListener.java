@@ -66,7 +66,7 @@ public class TestDataListener implements TestExecutionListener {
 
     @Override
     public void executionFinished(TestIdentifier id, TestExecutionResult result) {
-        if (id.isTest()) {
+        if (id.isTest() || data.containsKey(id)) {
             data.get(id).setResult(result);
         }
     }
@@ -75,8 +75,28 @@ public class TestDataListener implements TestExecutionListener {
     public void reportingEntryPublished(TestIdentifier testIdentifier, ReportEntry entry) {
         String report = entry.getKeyValuePairs().get(SoftAssertExtension.REPORT_KEY);
         if (report != null) {
-            data.get(testIdentifier).setReport(report);
+            getOrAddContainer(testIdentifier).setReport(report);
         }
+        String structuredReport = entry.getKeyValuePairs().get(SoftAssertExtension.STRUCTURED_REPORT_KEY);
+        if (structuredReport != null) {
+            getOrAddContainer(testIdentifier).setStructuredReport(structuredReport);
+        }
+    }
+
+    /**
+     * Obtains the data of a test. Containers, such as parameterized tests of which the invocations share a
+     * single soft assertion context, are added as a test when they publish a soft assertion report.
+     * @param id the identifier of the test or container
+     * @return the data of the test or container
+     */
+    private TestData getOrAddContainer(TestIdentifier id) {
+        TestData entry = data.get(id);
+        if (entry == null) {
+            entry = new TestData(id);
+            data.put(id, entry);
+            order.add(id);
+        }
+        return entry;
     }
 
     public List<TestData> getTestData() {
@@ -128,6 +148,7 @@ public class TestDataListener implements TestExecutionListener {
         private String skipped;
         private TestExecutionResult result;
         private String report;
+        private String structuredReport;
 
         private TestData(TestIdentifier id) {
             this.identifier = id;
@@ -150,6 +171,10 @@ public class TestDataListener implements TestExecutionListener {
             this.report = report;
         }
 
+        private void setStructuredReport(String structuredReport) {
+            this.structuredReport = structuredReport;
+        }
+
         public String getTime() {
             return formatTime(started, ended);
         }
@@ -194,6 +219,10 @@ public class TestDataListener implements TestExecutionListener {
             return report;
         }
 
+        public String getStructuredReport() {
+            return structuredReport;
+        }
+
     }
 
 }
@@ -0,0 +1,199 @@
+/* Copyright 2022 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.github.pcbouman_eur.testing.wrapper;
+
+import com.github.pcbouman_eur.testing.wrapper.exception.FieldTypeException;
+
+import java.lang.invoke.VarHandle;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.Field;
+
+/**
+ * <p>A resolved field of objects of a student class, obtained through
+ * {@link WrapperFactory#field(String, Class)}.</p>
+ *
+ * <p>The field is looked up and made accessible only once, when the reference is created. Reads and writes go
+ * through a {@link VarHandle}, and the primitive variants such as {@link #getInt(Object)} and
+ * {@link #setInt(Object, int)} do not box the value.</p>
+ *
+ * @param <I> the target interface implemented by the wrappers of the objects
+ * @param <T> the type of the field
+ */
+public final class FieldRef<I,T> {
+
+    private final WrapperFactory<I,?> factory;
+    private final Field field;
+    private final VarHandle handle;
+
+    FieldRef(WrapperFactory<I,?> factory, Field field, VarHandle handle) {
+        this.factory = factory;
+        this.field = field;
+        this.handle = handle;
+    }
+
+    /**
+     * The field of the student class accessed by this reference
+     * @return the field accessed by this reference
+     */
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * Reads the value currently stored in the field
+     * @param obj the wrapper of the object from which the field should be read
+     * @return the value currently stored in the field
+     */
+    @SuppressWarnings("unchecked")
+    public T get(I obj) {
+        return (T) handle.get(target(obj));
+    }
+
+    /**
+     * Stores a value in the field
+     * @param obj the wrapper of the object in which the value should be stored
+     * @param value the value to store in the field
+     * @throws UnsupportedOperationException if the field is final
+     */
+    public void set(I obj, T value) {
+        handle.set(target(obj), value);
+    }
+
+    /**
+     * Reads the value currently stored in a field of type int without boxing it
+     * @param obj the wrapper of the object from which the field should be read
+     * @return the value currently stored in the field
+     * @throws FieldTypeException if the field can not be read as an int
+     */
+    public int getInt(I obj) throws FieldTypeException {
+        try {
+            return (int) handle.get(target(obj));
+        } catch (WrongMethodTypeException | ClassCastException ex) {
+            throw new FieldTypeException(field, int.class);
+        }
+    }
+
+    /**
+     * Stores a value in a field of type int without boxing it
+     * @param obj the wrapper of the object in which the value should be stored
+     * @param value the value to store in the field
+     * @throws FieldTypeException if an int can not be stored in the field
+     * @throws UnsupportedOperationException if the field is final
+     */
+    public void setInt(I obj, int value) throws FieldTypeException {
+        try {
+            handle.set(target(obj), value);
+        } catch (WrongMethodTypeException | ClassCastException ex) {
+            throw new FieldTypeException(field, int.class);
+        }
+    }
+
+    /**
+     * Reads the value currently stored in a field of type long without boxing it
+     * @param obj the wrapper of the object from which the field should be read
+     * @return the value currently stored in the field
+     * @throws FieldTypeException if the field can not be read as a long
+     */
+    public long getLong(I obj) throws FieldTypeException {
+        try {
+            return (long) handle.get(target(obj));
+        } catch (WrongMethodTypeException | ClassCastException ex) {
+            throw new FieldTypeException(field, long.class);
+        }
+    }
+
+    /**
+     * Stores a value in a field of type long without boxing it
+     * @param obj the wrapper of the object in which the value should be stored
+     * @param value the value to store in the field
+     * @throws FieldTypeException if a long can not be stored in the field
+     * @throws UnsupportedOperationException if the field is final
+     */
+    public void setLong(I obj, long value) throws FieldTypeException {
+        try {
+            handle.set(target(obj), value);
+        } catch (WrongMethodTypeException | ClassCastException ex) {
+            throw new FieldTypeException(field, long.class);
+        }
+    }
+
+    /**
+     * Reads the value currently stored in a field of type double without boxing it
+     * @param obj the wrapper of the object from which the field should be read
+     * @return the value currently stored in the field
+     * @throws FieldTypeException if the field can not be read as a double
+     */
+    public double getDouble(I obj) throws FieldTypeException {
+        try {
+            return (double) handle.get(target(obj));
+        } catch (WrongMethodTypeException | ClassCastException ex) {
+            throw new FieldTypeException(field, double.class);
+        }
+    }
+
+    /**
+     * Stores a value in a field of type double without boxing it
+     * @param obj the wrapper of the object in which the value should be stored
+     * @param value the value to store in the field
+     * @throws FieldTypeException if a double can not be stored in the field
+     * @throws UnsupportedOperationException if the field is final
+     */
+    public void setDouble(I obj, double value) throws FieldTypeException {
+        try {
+            handle.set(target(obj), value);
+        } catch (WrongMethodTypeException | ClassCastException ex) {
+            throw new FieldTypeException(field, double.class);
+        }
+    }
+
+    /**
+     * Reads the value currently stored in a field of type boolean without boxing it
+     * @param obj the wrapper of the object from which the field should be read
+     * @return the value currently stored in the field
+     * @throws FieldTypeException if the field can not be read as a boolean
+     */
+    public boolean getBoolean(I obj) throws FieldTypeException {
+        try {
+            return (boolean) handle.get(target(obj));
+        } catch (WrongMethodTypeException | ClassCastException ex) {
+            throw new FieldTypeException(field, boolean.class);
+        }
+    }
+
+    /**
+     * Stores a value in a field of type boolean without boxing it
+     * @param obj the wrapper of the object in which the value should be stored
+     * @param value the value to store in the field
+     * @throws FieldTypeException if a boolean can not be stored in the field
+     * @throws UnsupportedOperationException if the field is final
+     */
+    public void setBoolean(I obj, boolean value) throws FieldTypeException {
+        try {
+            handle.set(target(obj), value);
+        } catch (WrongMethodTypeException | ClassCastException ex) {
+            throw new FieldTypeException(field, boolean.class);
+        }
+    }
+
+    private Object target(I obj) {
+        return factory.unwrap(obj);
+    }
+
+    @Override
+    public String toString() {
+        return "FieldRef[" + field + "]";
+    }
+}
@@ -0,0 +1,381 @@
+/* Copyright 2022 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.github.pcbouman_eur.testing.wrapper;
+
+import com.github.pcbouman_eur.testing.wrapper.exception.MissingMethodException;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A wrapper class that is generated at runtime. The generated class implements the target interface and
+ * holds a reference to an object of the student class. Every method of the interface calls the matching
+ * method of the student class directly, which allows the JIT to inline through the wrapper. Methods that are
+ * missing from the student class are implemented by stubs that throw a MissingMethodException. Checked exceptions
+ * that are not declared by a method of the interface are wrapped in an UndeclaredThrowableException, as is done
+ * by a Proxy.</p>
+ *
+ * <p>The generated class is defined in the package of the target interface, so it can implement interfaces
+ * that are not public. A class can only be generated if both the student class and the classes of this library
+ * can be resolved from the class loader of the target interface, and if the student class is accessible from the
+ * package of the target interface.</p>
+ *
+ * <p>Generated classes are cached per combination of target interface and student class, so creating many
+ * factories for the same types does not define a new class every time.</p>
+ *
+ * @param <I> the target interface implemented by the generated class
+ * @param <S> the student class wrapped by the generated class
+ */
+final class GeneratedWrapperClass<I,S> {
+
+    private static final String SOURCE_FIELD = "source";
+    private static final String METHODS_FIELD = "METHODS";
+    private static final AtomicLong COUNTER = new AtomicLong();
+
+    // The generated classes for each target interface, indexed by student class. Only student classes that are
+    // visible from the class loader of the target interface are stored, so that the cache does not keep student
+    // classes of other class loaders alive.
+    private static final ClassValue<Map<Class<?>, Optional<GeneratedWrapperClass<?,?>>>> GENERATED =
+            new ClassValue<>() {
+                @Override
+                protected Map<Class<?>, Optional<GeneratedWrapperClass<?,?>>> computeValue(Class<?> type) {
+                    return new ConcurrentHashMap<>();
+                }
+            };
+
+    private final Class<?> wrapperClass;
+    private final MethodHandle constructor;
+    private final MethodHandle sourceGetter;
+
+    private GeneratedWrapperClass(Class<?> wrapperClass, MethodHandle constructor, MethodHandle sourceGetter) {
+        this.wrapperClass = wrapperClass;
+        this.constructor = constructor;
+        this.sourceGetter = sourceGetter;
+    }
+
+    /**
+     * Creates a new object of the generated class that wraps the source object
+     * @param source the object of the student class to wrap
+     * @return an object of the generated class that delegates calls to the source object
+     */
+    @SuppressWarnings("unchecked")
+    I wrap(S source) {
+        try {
+            return (I) (Object) constructor.invokeExact((Object) source);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new AssertionError("The constructor of a generated wrapper should not throw "+t, t);
+        }
+    }
+
+    /**
+     * Checks whether an object was created by this generated wrapper class
+     * @param obj the object to check
+     * @return true if the object is an instance of the generated wrapper class
+     */
+    boolean isWrapper(Object obj) {
+        return wrapperClass.isInstance(obj);
+    }
+
+    /**
+     * Obtains the object of the student class wrapped by an object of the generated class
+     * @param obj an object of the generated class
+     * @return the wrapped object of the student class
+     */
+    @SuppressWarnings("unchecked")
+    S getSource(Object obj) {
+        try {
+            return (S) (Object) sourceGetter.invokeExact(obj);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new AssertionError("Reading the source of a generated wrapper should not throw "+t, t);
+        }
+    }
+
+    /**
+     * Obtains the wrapper class for a target interface and a student class, which is generated the first time it
+     * is requested.
+     *
+     * @param targetInterface the interface the generated class should implement
+     * @param studentClass the student class the generated class should delegate to
+     * @param <I> the target interface implemented by the generated class
+     * @param <S> the student class wrapped by the generated class
+     * @return the generated wrapper class, or null if no class can be generated for this combination of types
+     */
+    @SuppressWarnings("unchecked")
+    static <I,S> GeneratedWrapperClass<I,S> generate(Class<I> targetInterface, Class<S> studentClass) {
+        if (!isVisible(targetInterface, studentClass)) {
+            return null;
+        }
+        return (GeneratedWrapperClass<I,S>) GENERATED.get(targetInterface)
+                .computeIfAbsent(studentClass, c -> Optional.ofNullable(define(targetInterface, studentClass)))
+                .orElse(null);
+    }
+
+    private static <I,S> GeneratedWrapperClass<I,S> define(Class<I> targetInterface, Class<S> studentClass) {
+        if (!targetInterface.isInterface() || !isVisible(targetInterface, MissingMethodException.class)) {
+            return null;
+        }
+        if (!Modifier.isPublic(studentClass.getModifiers())
+                && !studentClass.getPackageName().equals(targetInterface.getPackageName())) {
+            return null;
+        }
+        List<Method> methods = interfaceMethods(targetInterface);
+        if (methods == null) {
+            return null;
+        }
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(targetInterface, MethodHandles.lookup());
+            String pkg = targetInterface.getPackageName();
+            String name = (pkg.isEmpty() ? "" : pkg + ".") + targetInterface.getSimpleName()
+                    + "$$Wrapper$" + COUNTER.incrementAndGet();
+            Method[] missing = new Method[methods.size()];
+            byte[] bytes = emit(name, targetInterface, studentClass, methods, missing);
+            Class<?> cls = lookup.defineClass(bytes);
+            lookup.findStaticSetter(cls, METHODS_FIELD, Method[].class).invoke((Object) missing);
+            MethodHandle constructor = lookup.findConstructor(cls, MethodType.methodType(void.class, studentClass))
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            MethodHandle getter = lookup.findGetter(cls, SOURCE_FIELD, studentClass)
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            return new GeneratedWrapperClass<>(cls, constructor, getter);
+        } catch (IllegalAccessException | SecurityException e) {
+            // The package of the target interface is not open to this library
+            return null;
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new AssertionError("Unexpected exception while generating a wrapper class: "+t, t);
+        }
+    }
+
+    private static boolean isVisible(Class<?> from, Class<?> target) {
+        try {
+            return Class.forName(target.getName(), false, from.getClassLoader()) == target;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Collects the non-static methods of an interface, including those of its super interfaces, with one method
+     * per name and parameter list.
+     * @param targetInterface the interface for which the methods should be collected
+     * @return the methods of the interface, or null if two methods have the same signature but a different
+     *         return type
+     */
+    private static List<Method> interfaceMethods(Class<?> targetInterface) {
+        Map<String,Method> result = new LinkedHashMap<>();
+        for (Method m : targetInterface.getMethods()) {
+            if (Modifier.isStatic(m.getModifiers())) {
+                continue;
+            }
+            Method prev = result.putIfAbsent(signature(m), m);
+            if (prev != null && prev.getReturnType() != m.getReturnType()) {
+                return null;
+            }
+        }
+        for (String objMethod : new String[]{"equals", "hashCode", "toString"}) {
+            for (Method m : Object.class.getMethods()) {
+                if (m.getName().equals(objMethod)) {
+                    result.putIfAbsent(signature(m), m);
+                }
+            }
+        }
+        return new ArrayList<>(result.values());
+    }
+
+    private static String signature(Method m) {
+        String descriptor = Type.getMethodDescriptor(m);
+        return m.getName() + descriptor.substring(0, descriptor.indexOf(')') + 1);
+    }
+
+    private static byte[] emit(String name, Class<?> targetInterface, Class<?> studentClass, List<Method> methods,
+                               Method[] missing) {
+        String internalName = name.replace('.', '/');
+        String studentName = Type.getInternalName(studentClass);
+        String studentDesc = Type.getDescriptor(studentClass);
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER | Opcodes.ACC_SYNTHETIC,
+                internalName, null, "java/lang/Object",
+                new String[]{Type.getInternalName(targetInterface)});
+        cw.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, METHODS_FIELD,
+                Type.getDescriptor(Method[].class), null, null).visitEnd();
+        cw.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, SOURCE_FIELD, studentDesc, null, null).visitEnd();
+
+        MethodVisitor init = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "(" + studentDesc + ")V", null, null);
+        init.visitCode();
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitVarInsn(Opcodes.ALOAD, 0);
+        init.visitVarInsn(Opcodes.ALOAD, 1);
+        init.visitFieldInsn(Opcodes.PUTFIELD, internalName, SOURCE_FIELD, studentDesc);
+        init.visitInsn(Opcodes.RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        for (int i = 0; i < methods.size(); i++) {
+            Method m = methods.get(i);
+            MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, m.getName(), Type.getMethodDescriptor(m),
+                    null, null);
+            mv.visitCode();
+            Method target = findTarget(studentClass, m);
+            if (target == null) {
+                missing[i] = m;
+                emitMissingStub(mv, internalName, studentClass, i);
+            } else {
+                emitDelegate(mv, internalName, studentName, studentDesc, studentClass.isInterface(), m, target);
+            }
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static Method findTarget(Class<?> studentClass, Method m) {
+        try {
+            return studentClass.getMethod(m.getName(), m.getParameterTypes());
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static void emitMissingStub(MethodVisitor mv, String internalName, Class<?> studentClass, int index) {
+        String exName = Type.getInternalName(MissingMethodException.class);
+        mv.visitTypeInsn(Opcodes.NEW, exName);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitFieldInsn(Opcodes.GETSTATIC, internalName, METHODS_FIELD, Type.getDescriptor(Method[].class));
+        mv.visitLdcInsn(index);
+        mv.visitInsn(Opcodes.AALOAD);
+        mv.visitLdcInsn(Type.getType(studentClass));
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, exName, "<init>",
+                Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(Method.class), Type.getType(Class.class)),
+                false);
+        mv.visitInsn(Opcodes.ATHROW);
+    }
+
+    private static void emitDelegate(MethodVisitor mv, String internalName, String studentName, String studentDesc,
+                                     boolean studentIsInterface, Method m, Method target) {
+        Label start = new Label();
+        Label end = new Label();
+        Label handler = new Label();
+        mv.visitTryCatchBlock(start, end, handler, "java/lang/Throwable");
+        mv.visitLabel(start);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitFieldInsn(Opcodes.GETFIELD, internalName, SOURCE_FIELD, studentDesc);
+        int slot = 1;
+        for (Class<?> param : m.getParameterTypes()) {
+            Type t = Type.getType(param);
+            mv.visitVarInsn(t.getOpcode(Opcodes.ILOAD), slot);
+            slot += t.getSize();
+        }
+        mv.visitMethodInsn(studentIsInterface ? Opcodes.INVOKEINTERFACE : Opcodes.INVOKEVIRTUAL, studentName,
+                target.getName(), Type.getMethodDescriptor(target), studentIsInterface);
+        emitReturn(mv, target.getReturnType(), m.getReturnType());
+        mv.visitLabel(end);
+        emitUndeclaredCheck(mv, handler, m);
+    }
+
+    /**
+     * Emits an exception handler that rethrows unchecked exceptions and exceptions declared by the interface method,
+     * and wraps all other exceptions in an UndeclaredThrowableException. The code before the handler has no
+     * branches, so the handler can use the locals of the initial frame.
+     */
+    private static void emitUndeclaredCheck(MethodVisitor mv, Label handler, Method m) {
+        String throwable = Type.getInternalName(Throwable.class);
+        Label rethrow = new Label();
+        mv.visitLabel(handler);
+        mv.visitFrame(Opcodes.F_SAME1, 0, null, 1, new Object[]{throwable});
+        List<Class<?>> allowed = new ArrayList<>(List.of(RuntimeException.class, Error.class));
+        allowed.addAll(List.of(m.getExceptionTypes()));
+        for (Class<?> type : allowed) {
+            mv.visitInsn(Opcodes.DUP);
+            mv.visitTypeInsn(Opcodes.INSTANCEOF, Type.getInternalName(type));
+            mv.visitJumpInsn(Opcodes.IFNE, rethrow);
+        }
+        String undeclared = Type.getInternalName(UndeclaredThrowableException.class);
+        mv.visitTypeInsn(Opcodes.NEW, undeclared);
+        mv.visitInsn(Opcodes.DUP_X1);
+        mv.visitInsn(Opcodes.SWAP);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, undeclared, "<init>",
+                Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(Throwable.class)), false);
+        mv.visitInsn(Opcodes.ATHROW);
+        mv.visitLabel(rethrow);
+        mv.visitFrame(Opcodes.F_SAME1, 0, null, 1, new Object[]{throwable});
+        mv.visitInsn(Opcodes.ATHROW);
+    }
+
+    /**
+     * Emits the conversion of the value returned by the student method to the return type of the interface
+     * method, following the same boxing and casting rules that apply to a value returned by an
+     * InvocationHandler of a Proxy.
+     */
+    private static void emitReturn(MethodVisitor mv, Class<?> studentType, Class<?> interfaceType) {
+        Type it = Type.getType(interfaceType);
+        if (interfaceType == void.class) {
+            if (studentType != void.class) {
+                mv.visitInsn(Type.getType(studentType).getSize() == 2 ? Opcodes.POP2 : Opcodes.POP);
+            }
+            mv.visitInsn(Opcodes.RETURN);
+            return;
+        }
+        if (studentType == interfaceType
+                || (!studentType.isPrimitive() && !interfaceType.isPrimitive()
+                    && interfaceType.isAssignableFrom(studentType))) {
+            mv.visitInsn(it.getOpcode(Opcodes.IRETURN));
+            return;
+        }
+        if (studentType == void.class) {
+            mv.visitInsn(Opcodes.ACONST_NULL);
+        } else if (studentType.isPrimitive()) {
+            Type boxed = Type.getType(box(studentType));
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, boxed.getInternalName(), "valueOf",
+                    Type.getMethodDescriptor(boxed, Type.getType(studentType)), false);
+        }
+        if (interfaceType.isPrimitive()) {
+            Type boxed = Type.getType(box(interfaceType));
+            mv.visitTypeInsn(Opcodes.CHECKCAST, boxed.getInternalName());
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, boxed.getInternalName(), interfaceType.getName() + "Value",
+                    Type.getMethodDescriptor(it), false);
+        } else {
+            mv.visitTypeInsn(Opcodes.CHECKCAST, it.getInternalName());
+        }
+        mv.visitInsn(it.getOpcode(Opcodes.IRETURN));
+    }
+
+    private static Class<?> box(Class<?> primitive) {
+        return MethodType.methodType(primitive).wrap().returnType();
+    }
+
+}
@@ -0,0 +1,57 @@
+/* Copyright 2022 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.github.pcbouman_eur.testing.wrapper;
+
+/**
+ * Determines how a WrapperFactory delegates calls made on a wrapper object to the methods of the student class.
+ */
+public enum InvocationStrategy {
+
+    /**
+     * Every call is delegated using {@link java.lang.reflect.Method#invoke(Object, Object...)}. This is the
+     * default strategy.
+     */
+    REFLECTION,
+
+    /**
+     * Every method of the target interface is resolved once into a cached {@link java.lang.invoke.MethodHandle}
+     * which is adapted to a generic type and called using invokeExact. This avoids the access checks performed
+     * by reflection on every call, which makes it better suited for tests that call student code very often.
+     */
+    METHOD_HANDLE,
+
+    /**
+     * A class that implements the target interface is generated at runtime, instead of using a
+     * {@link java.lang.reflect.Proxy}. Every method of the generated class calls the corresponding method of the
+     * student class directly, or throws a MissingMethodException if the student class does not have it. As there
+     * is no InvocationHandler in between, the JIT is able to inline calls through the wrapper. If no class can be
+     * generated for the target interface and student class, proxies using the {@link #METHOD_HANDLE} strategy
+     * are created instead.
+     */
+    GENERATED_CLASS,
+
+    /**
+     * If the student class already implements the target interface, objects of the student class are not wrapped
+     * at all and calls go directly to the student's code. Unlike the other strategies, nothing is checked or
+     * converted: a checked exception that is not declared by the interface, for example one thrown using a sneaky
+     * throw, reaches the caller as is instead of being wrapped in an UndeclaredThrowableException, and a method that
+     * is missing because the student class was compiled against another version of the interface results in an
+     * AbstractMethodError rather than a MissingMethodException. If the student class does not implement the
+     * interface, the factory behaves as if the {@link #GENERATED_CLASS} strategy was selected.
+     */
+    PASS_THROUGH
+
+}
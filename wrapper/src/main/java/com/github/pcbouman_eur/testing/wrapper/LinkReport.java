@@ -0,0 +1,116 @@
+/* Copyright 2022 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.github.pcbouman_eur.testing.wrapper;
+
+import com.github.pcbouman_eur.testing.wrapper.exception.MissingConstructorException;
+import com.github.pcbouman_eur.testing.wrapper.exception.MissingMethodException;
+import com.github.pcbouman_eur.testing.wrapper.exception.SymbolException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Report produced when a WrapperFactory resolves all methods of its target interface and a number of constructors
+ * in advance. It contains an exception for every method and constructor that is missing from the student class.
+ */
+public class LinkReport {
+
+    private final Class<?> studentClass;
+    private final List<MissingMethodException> missingMethods;
+    private final List<MissingConstructorException> missingConstructors;
+
+    /**
+     * Constructor for a LinkReport
+     * @param studentClass the student class that was linked
+     * @param missingMethods the exceptions for the methods that are missing from the student class
+     * @param missingConstructors the exceptions for the constructors that are missing from the student class
+     */
+    public LinkReport(Class<?> studentClass, List<MissingMethodException> missingMethods,
+                      List<MissingConstructorException> missingConstructors) {
+        this.studentClass = studentClass;
+        this.missingMethods = Collections.unmodifiableList(new ArrayList<>(missingMethods));
+        this.missingConstructors = Collections.unmodifiableList(new ArrayList<>(missingConstructors));
+    }
+
+    /**
+     * The student class that was linked
+     * @return the student class that was linked
+     */
+    public Class<?> getStudentClass() {
+        return studentClass;
+    }
+
+    /**
+     * The exceptions for the methods of the target interface that are missing from the student class
+     * @return a list with an exception for every missing method
+     */
+    public List<MissingMethodException> getMissingMethods() {
+        return missingMethods;
+    }
+
+    /**
+     * The exceptions for the requested constructors that are missing from the student class
+     * @return a list with an exception for every missing constructor
+     */
+    public List<MissingConstructorException> getMissingConstructors() {
+        return missingConstructors;
+    }
+
+    /**
+     * All exceptions in this report, with the missing constructors first
+     * @return a list with an exception for every missing constructor and method
+     */
+    public List<SymbolException> getMissingSymbols() {
+        List<SymbolException> result = new ArrayList<>(missingConstructors);
+        result.addAll(missingMethods);
+        return result;
+    }
+
+    /**
+     * Checks whether all methods and constructors could be resolved
+     * @return true if nothing is missing from the student class
+     */
+    public boolean isComplete() {
+        return missingMethods.isEmpty() && missingConstructors.isEmpty();
+    }
+
+    /**
+     * Throws the first exception in this report, so a test can fail fast if the student class is incomplete
+     * @throws SymbolException the first missing constructor or method, if anything is missing
+     */
+    public void throwIfIncomplete() throws SymbolException {
+        if (!isComplete()) {
+            throw getMissingSymbols().get(0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (isComplete()) {
+            return "No missing symbols in type "+studentClass.getSimpleName();
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(getMissingSymbols().size());
+        sb.append(" missing symbol(s) in type ");
+        sb.append(studentClass.getSimpleName());
+        for (SymbolException ex : getMissingSymbols()) {
+            sb.append(System.lineSeparator());
+            sb.append(ex.getMessage());
+        }
+        return sb.toString();
+    }
+}
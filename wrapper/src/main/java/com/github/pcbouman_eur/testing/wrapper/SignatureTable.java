@@ -0,0 +1,106 @@
+/* Copyright 2022 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.github.pcbouman_eur.testing.wrapper;
+
+import java.util.Arrays;
+
+/**
+ * <p>A small lookup table that maps the runtime types of an argument array to a resolved member, such as a
+ * constructor or a static method.</p>
+ *
+ * <p>Lookups compare the classes of the arguments directly with the stored signatures, so a lookup does not
+ * allocate a type array or a key object. The table is copied whenever an entry is added, which means lookups
+ * never take a lock. As the number of signatures used by a test class is typically small, the table is limited
+ * to a fixed number of entries. Signatures that do not fit are not stored and have to be resolved elsewhere.</p>
+ *
+ * @param <T> the type of the resolved members
+ */
+final class SignatureTable<T> {
+
+    private static final int MAX_ENTRIES = 64;
+
+    private volatile Entry<T>[] entries;
+
+    @SuppressWarnings("unchecked")
+    SignatureTable() {
+        entries = new Entry[0];
+    }
+
+    /**
+     * Finds the member that was stored for a name, return type and the runtime types of an argument array
+     * @param name the name of the member, or null for constructors
+     * @param returnType the expected return type of the member, or null for constructors
+     * @param args the arguments that will be passed to the member
+     * @return the member stored for this signature, or null if there is none
+     */
+    T find(String name, Class<?> returnType, Object[] args) {
+        for (Entry<T> e : entries) {
+            if (e.matches(name, returnType, args)) {
+                return e.value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores the member resolved for a name, return type and argument types
+     * @param name the name of the member, or null for constructors
+     * @param returnType the expected return type of the member, or null for constructors
+     * @param types the runtime types of the arguments, as computed from an argument array
+     * @param value the resolved member
+     */
+    synchronized void add(String name, Class<?> returnType, Class<?>[] types, T value) {
+        Entry<T>[] current = entries;
+        if (current.length >= MAX_ENTRIES) {
+            return;
+        }
+        Entry<T>[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = new Entry<>(name, returnType, types.clone(), value);
+        entries = next;
+    }
+
+    private static final class Entry<T> {
+
+        private final String name;
+        private final Class<?> returnType;
+        private final Class<?>[] types;
+        private final T value;
+
+        private Entry(String name, Class<?> returnType, Class<?>[] types, T value) {
+            this.name = name;
+            this.returnType = returnType;
+            this.types = types;
+            this.value = value;
+        }
+
+        private boolean matches(String otherName, Class<?> otherReturnType, Object[] args) {
+            if (types.length != args.length || returnType != otherReturnType) {
+                return false;
+            }
+            if (name != null && !name.equals(otherName)) {
+                return false;
+            }
+            for (int i=0; i < args.length; i++) {
+                Object o = args[i];
+                Class<?> type = o == null ? Object.class : o.getClass();
+                if (type != types[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/* Copyright 2022 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.github.pcbouman_eur.testing.wrapper;
+
+import com.github.pcbouman_eur.testing.wrapper.exception.FieldTypeException;
+
+import java.lang.invoke.VarHandle;
+import java.lang.invoke.WrongMethodTypeException;
+import java.lang.reflect.Field;
+
+/**
+ * <p>A resolved static field of a student class, obtained through
+ * {@link WrapperFactory#staticField(String, Class)}.</p>
+ *
+ * <p>The field is looked up and made accessible only once, when the reference is created. Reads and writes go
+ * through a {@link VarHandle}, and the primitive variants such as {@link #getInt()} and {@link #setInt(int)}
+ * do not box the value.</p>
+ *
+ * @param <T> the type of the field
+ */
+public final class StaticFieldRef<T> {
+
+    private final Field field;
+    private final VarHandle handle;
+
+    StaticFieldRef(Field field, VarHandle handle) {
+        this.field = field;
+        this.handle = handle;
+    }
+
+    /**
+     * The field of the student class accessed by this reference
+     * @return the field accessed by this reference
+     */
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * Reads the value currently stored in the field
+     * @return the value currently stored in the field
+     */
+    @SuppressWarnings("unchecked")
+    public T get() {
+        return (T) handle.get();
+    }
+
+    /**
+     * Stores a value in the field
+     * @param value the value to store in the field
+     * @throws UnsupportedOperationException if the field is final
+     */
+    public void set(T value) {
+        handle.set(value);
+    }
+
+    /**
+     * Reads the value currently stored in a field of type int without boxing it
+     * @return the value currently stored in the field
+     * @throws FieldTypeException if the field can not be read as an int
+     */
+    public int getInt() throws FieldTypeException {
+        try {
+            return (int) handle.get();
+        } catch (WrongMethodTypeException | ClassCastException ex) {
+            throw new FieldTypeException(field, int.class);
+        }
+    }
+
+    /**
+     * Stores a value in a field of type int without boxing it
+     * @param value the value to store in the field
+     * @throws FieldTypeException if an int can not be stored in the field
+     * @throws UnsupportedOperationException if the field is final
+     */
+    public void setInt(int value) throws FieldTypeException {
+        try {
+            handle.set(value);
+        } catch (WrongMethodTypeException | ClassCastException ex) {
+            throw new FieldTypeException(field, int.class);
+        }
+    }
+
+    /**
+     * Reads the value currently stored in a field of type long without boxing it
+     * @return the value currently stored in the field
+     * @throws FieldTypeException if the field can not be read as a long
+     */
+    public long getLong() throws FieldTypeException {
+        try {
+            return (long) handle.get();
+        } catch (WrongMethodTypeException | ClassCastException ex) {
+            throw new FieldTypeException(field, long.class);
+        }
+    }
+
+    /**
+     * Stores a value in a field of type long without boxing it
+     * @param value the value to store in the field
+     * @throws FieldTypeException if a long can not be stored in the field
+     * @throws UnsupportedOperationException if the field is final
+     */
+    public void setLong(long value) throws FieldTypeException {
+        try {
+            handle.set(value);
+        } catch (WrongMethodTypeException | ClassCastException ex) {
+            throw new FieldTypeException(field, long.class);
+        }
+    }
+
+    /**
+     * Reads the value currently stored in a field of type double without boxing it
+     * @return the value currently stored in the field
+     * @throws FieldTypeException if the field can not be read as a double
+     */
+    public double getDouble() throws FieldTypeException {
+        try {
+            return (double) handle.get();
+        } catch (WrongMethodTypeException | ClassCastException ex) {
+            throw new FieldTypeException(field, double.class);
+        }
+    }
+
+    /**
+     * Stores a value in a field of type double without boxing it
+     * @param value the value to store in the field
+     * @throws FieldTypeException if a double can not be stored in the field
+     * @throws UnsupportedOperationException if the field is final
+     */
+    public void setDouble(double value) throws FieldTypeException {
+        try {
+            handle.set(value);
+        } catch (WrongMethodTypeException | ClassCastException ex) {
+            throw new FieldTypeException(field, double.class);
+        }
+    }
+
+    /**
+     * Reads the value currently stored in a field of type boolean without boxing it
+     * @return the value currently stored in the field
+     * @throws FieldTypeException if the field can not be read as a boolean
+     */
+    public boolean getBoolean() throws FieldTypeException {
+        try {
+            return (boolean) handle.get();
+        } catch (WrongMethodTypeException | ClassCastException ex) {
+            throw new FieldTypeException(field, boolean.class);
+        }
+    }
+
+    /**
+     * Stores a value in a field of type boolean without boxing it
+     * @param value the value to store in the field
+     * @throws FieldTypeException if a boolean can not be stored in the field
+     * @throws UnsupportedOperationException if the field is final
+     */
+    public void setBoolean(boolean value) throws FieldTypeException {
+        try {
+            handle.set(value);
+        } catch (WrongMethodTypeException | ClassCastException ex) {
+            throw new FieldTypeException(field, boolean.class);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StaticFieldRef[" + field + "]";
+    }
+}
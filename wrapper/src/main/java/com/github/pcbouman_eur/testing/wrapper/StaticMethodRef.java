@@ -0,0 +1,85 @@
+/* Copyright 2022 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.github.pcbouman_eur.testing.wrapper;
+
+import com.github.pcbouman_eur.testing.wrapper.exception.WrappedException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+
+/**
+ * <p>A resolved static method of a student class, obtained through
+ * {@link WrapperFactory#staticMethod(String, Class, Class[])}.</p>
+ *
+ * <p>The method is looked up only once, when the reference is created. A reference can be stored in a local
+ * variable or field and be called many times, for example in a loop, without any further lookups.</p>
+ *
+ * @param <R> the return type of the static method
+ */
+public final class StaticMethodRef<R> {
+
+    private final Method method;
+    private final MethodHandle handle;
+
+    StaticMethodRef(Method method, MethodHandle handle) {
+        this.method = method;
+        this.handle = handle;
+    }
+
+    /**
+     * The static method of the student class that is called by this reference
+     * @return the static method called by this reference
+     */
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * Calls the static method and returns its result.
+     * @param args the arguments to pass to the method
+     * @return the object returned by the static method, or null if its return type is void
+     * @throws WrappedException if the called method threw a checked Exception it is wrapped and thrown
+     */
+    @SuppressWarnings("unchecked")
+    public R invoke(Object... args) throws WrappedException {
+        try {
+            return (R) (Object) handle.invokeExact(args);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new WrappedException(t);
+        }
+    }
+
+    /**
+     * Calls the static method and returns its result. Allows checked exceptions to be thrown.
+     *
+     * Can produce unwrapped checked exceptions, and should probably be only be used to test if the student correctly
+     * throws checked exceptions.
+     *
+     * @param args the arguments to pass to the method
+     * @return the object returned by the static method, or null if its return type is void
+     * @throws Throwable any potential exception that was thrown by the static method
+     */
+    public R invokeEx(Object... args) throws Throwable {
+        return WrappedException.getOrThrow(() -> invoke(args));
+    }
+
+    @Override
+    public String toString() {
+        return "StaticMethodRef[" + method + "]";
+    }
+}
@@ -19,11 +19,16 @@ import com.github.pcbouman_eur.testing.wrapper.exception.*;
 import org.apache.commons.lang3.reflect.ConstructorUtils;
 import org.apache.commons.lang3.reflect.MethodUtils;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
 import java.lang.reflect.*;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * <p>The purpose of this class is to make access to classes written by students indirect in testing code.
@@ -47,10 +52,22 @@ import java.util.Map;
  */
 public final class WrapperFactory<I,S> {
 
+    private static final Object[] NO_ARGS = new Object[0];
+    private static final Class<?>[] NO_TYPES = new Class<?>[0];
+    private static final MethodType GENERIC_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+    private static final MethodType STATIC_GENERIC_TYPE = MethodType.methodType(Object.class, Object[].class);
+
     private final Class<I> targetInterface;
     private final Class<S> studentClass;
+    private final InvocationStrategy strategy;
     private final Map<Method,Method> methodMap;
+    private final Map<Method,MethodHandle> handleMap;
+    private final boolean passThrough;
+    private final GeneratedWrapperClass<I,S> generatedClass;
     private final Map<List<Class<?>>,Constructor<S>> constructorMap;
+    private final Map<List<Object>,Method> staticMethodMap;
+    private final SignatureTable<Constructor<S>> constructorTable;
+    private final SignatureTable<Method> staticMethodTable;
     private final Map<String,Field> staticFieldMap;
     private final Map<String,Field> fieldMap;
 
@@ -58,30 +75,68 @@ public final class WrapperFactory<I,S> {
      * <p>Constructor to create a WrapperFactory object.</p>
      *
      * <p>It is advisable to construct only one factory within a Unit Test class, and not a new factory for each
-     * test method, as the WrapperFactory maintains a cache of methods for faster access.</p>
+     * test method, as the WrapperFactory maintains a cache of methods for faster access. The caches can be
+     * accessed concurrently, so a single factory can be shared by tests that are executed in parallel.</p>
      *
      * @param targetInterface the class object associated with the target interface that the student should implement
      * @param studentClass the class object associated with the class the student is supposed to implement
      */
     public WrapperFactory(Class<I> targetInterface, Class<S> studentClass) {
+        this(targetInterface, studentClass, InvocationStrategy.REFLECTION);
+    }
+
+    /**
+     * <p>Constructor to create a WrapperFactory object that uses a particular strategy to delegate calls
+     * on wrapper objects to the student class.</p>
+     *
+     * <p>The {@link InvocationStrategy#METHOD_HANDLE} strategy is recommended for tests that call methods of
+     * wrapped objects in tight loops, such as stress tests against data structures implemented by students.</p>
+     *
+     * @param targetInterface the class object associated with the target interface that the student should implement
+     * @param studentClass the class object associated with the class the student is supposed to implement
+     * @param strategy the strategy used to delegate calls on wrapper objects to the student class
+     */
+    public WrapperFactory(Class<I> targetInterface, Class<S> studentClass, InvocationStrategy strategy) {
         this.targetInterface = targetInterface;
         this.studentClass = studentClass;
-        methodMap = new LinkedHashMap<>();
-        constructorMap = new LinkedHashMap<>();
-        staticFieldMap = new LinkedHashMap<>();
-        fieldMap = new LinkedHashMap<>();
+        this.strategy = strategy;
+        methodMap = new ConcurrentHashMap<>();
+        handleMap = new ConcurrentHashMap<>();
+        passThrough = strategy == InvocationStrategy.PASS_THROUGH && targetInterface.isAssignableFrom(studentClass);
+        if (strategy == InvocationStrategy.GENERATED_CLASS
+                || (strategy == InvocationStrategy.PASS_THROUGH && !passThrough)) {
+            generatedClass = GeneratedWrapperClass.generate(targetInterface, studentClass);
+        }
+        else {
+            generatedClass = null;
+        }
+        constructorMap = new ConcurrentHashMap<>();
+        staticMethodMap = new ConcurrentHashMap<>();
+        constructorTable = new SignatureTable<>();
+        staticMethodTable = new SignatureTable<>();
+        staticFieldMap = new ConcurrentHashMap<>();
+        fieldMap = new ConcurrentHashMap<>();
     }
 
     /**
      * Creates a wrapped object that has the type of the target interface I, and which delegates all method calls
      * to calls of methods on the source methods, if those methods exists in classes of type S. If they do not
-     * exist, a MissingMethodException is thrown when such a method is called
+     * exist, a MissingMethodException is thrown when such a method is called.
+     *
+     * If this factory uses the {@link InvocationStrategy#PASS_THROUGH} strategy and the student class S implements
+     * the target interface I, the source object itself is returned.
      *
      * @param source and object of the student class S that should be wrapped
      * @return a wrapper of type I that delegates methods to the source object
      */
     @SuppressWarnings("unchecked")
     public I wrapToResult(S source) {
+        if (passThrough) {
+            return (I) source;
+        }
+        if (generatedClass != null) {
+            return generatedClass.wrap(source);
+        }
         Wrapper f = new Wrapper(source);
         return (I) Proxy.newProxyInstance(targetInterface.getClassLoader(), new Class<?>[]{targetInterface}, f);
     }
@@ -121,7 +176,12 @@ public final class WrapperFactory<I,S> {
     public <E> E invokeStatic(String methodName, Class<E> returnType, Object... args)
             throws MissingStaticMethodException, MethodStateException, WrappedException{
         try {
-            Method m = findStaticMethod(methodName, returnType, args);
+            Method m = staticMethodTable.find(methodName, returnType, args);
+            if (m == null) {
+                Class<?>[] parameterTypes = typeArray(args);
+                m = findStaticMethod(methodName, returnType, parameterTypes);
+                staticMethodTable.add(methodName, returnType, parameterTypes, m);
+            }
             try {
                 return (E) m.invoke(null, args);
             } catch (IllegalAccessException e) {
@@ -219,7 +279,7 @@ public final class WrapperFactory<I,S> {
      * @throws WrappedException if the called constructor threw a checked Exception it is wrapped and thrown
      */
     public I constructor(Object ... args) throws MissingConstructorException, WrappedException {
-        return typedConstructor(typeArray(args), args);
+        return wrapToResult(constructFromArgs(args));
     }
 
     /**
@@ -232,7 +292,7 @@ public final class WrapperFactory<I,S> {
      * @throws WrappedException if the called constructor threw a checked Exception it is wrapped and thrown
      */
     public S rawConstructor(Object ... args) throws MissingConstructorException, WrappedException {
-        return rawTypedConstructor(typeArray(args), args);
+        return constructFromArgs(args);
     }
 
     /**
@@ -245,11 +305,12 @@ public final class WrapperFactory<I,S> {
      *
      * @param args the arguments to pass into the constructor
      * @return a wrapper of type I around an object that was created by a constructor of the student class S
-     * @throws MissingConstructorException if student class S does not implement a constructor that matches the arguments
+     * @throws MissingConstructorException if student class S does not implement a constructor that matches the
+     *         arguments
      * @throws Throwable any potential exception that was thrown by the constructor
      */
     public I constructorEx(Object ... args) throws MissingConstructorException, Throwable {
-        return WrappedException.getOrThrow(() -> typedConstructor(typeArray(args), args));
+        return WrappedException.getOrThrow(() -> wrapToResult(constructFromArgs(args)));
     }
 
     /**
@@ -265,7 +326,7 @@ public final class WrapperFactory<I,S> {
      * @throws Throwable any potential exception that was thrown by the constructor
      */
     public S rawConstructorEx(Object ... args) throws MissingConstructorException, Throwable {
-        return WrappedException.getOrThrow(() -> rawTypedConstructor(typeArray(args), args));
+        return WrappedException.getOrThrow(() -> constructFromArgs(args));
     }
 
     /**
@@ -282,7 +343,8 @@ public final class WrapperFactory<I,S> {
      * @throws MissingConstructorException if student class S has no constructor that matches the arguments
      * @throws WrappedException if the called constructor threw a checked Exception it is wrapped and thrown
      */
-    public I typedConstructor(Class<?>[] argumentTypes, Object... args) throws MissingConstructorException, WrappedException {
+    public I typedConstructor(Class<?>[] argumentTypes, Object... args)
+            throws MissingConstructorException, WrappedException {
         return wrapToResult(rawTypedConstructor(argumentTypes, args));
     }
 
@@ -301,17 +363,27 @@ public final class WrapperFactory<I,S> {
      * @throws WrappedException if the called constructor threw a checked Exception it is wrapped and thrown
      */
 
-    public S rawTypedConstructor(Class<?>[] argumentTypes, Object... args) throws MissingConstructorException, WrappedException {
-        List<Class<?>> typeList = Arrays.asList(argumentTypes);
-        Constructor<S> cons = constructorMap.get(typeList);
+    public S rawTypedConstructor(Class<?>[] argumentTypes, Object... args)
+            throws MissingConstructorException, WrappedException {
+        return newInstance(findConstructor(argumentTypes), args);
+    }
+
+    /**
+     * Calls the constructor of the student class S that matches the runtime types of the arguments. Constructors
+     * that were used before are found in a table that is matched against the arguments directly, which
+     * avoids the allocation of a type array for every call.
+     */
+    private S constructFromArgs(Object[] args) throws MissingConstructorException, WrappedException {
+        Constructor<S> cons = constructorTable.find(null, null, args);
         if (cons == null) {
-            cons = ConstructorUtils.getMatchingAccessibleConstructor(studentClass, argumentTypes);
-            if (cons == null) {
-                throw new MissingConstructorException(Arrays.asList(argumentTypes), studentClass);
-            }
-            constructorMap.put(typeList, cons);
+            Class<?>[] argumentTypes = typeArray(args);
+            cons = findConstructor(argumentTypes);
+            constructorTable.add(null, null, argumentTypes, cons);
         }
+        return newInstance(cons, args);
+    }
 
+    private S newInstance(Constructor<S> cons, Object[] args) throws WrappedException {
         try {
             return cons.newInstance(args);
         } catch (InstantiationException e) {
@@ -335,6 +407,9 @@ public final class WrapperFactory<I,S> {
         if (studentClass.isInstance(wrappedObj)) {
             return (S) wrappedObj;
         }
+        if (generatedClass != null && generatedClass.isWrapper(wrappedObj)) {
+            return generatedClass.getSource(wrappedObj);
+        }
         InvocationHandler handler = Proxy.getInvocationHandler(wrappedObj);
         if (handler instanceof WrapperFactory.Wrapper) {
             Wrapper w = (Wrapper) handler;
@@ -411,17 +486,56 @@ public final class WrapperFactory<I,S> {
         setField(f, unwrap(object), value);
     }
 
+    /**
+     * <p>Looks up a field of objects of the student class S once, and returns a reference that can be used to read
+     * and write the field repeatedly without any further lookups.</p>
+     *
+     * <p>The reference provides primitive variants such as {@link FieldRef#getInt(Object)}, which makes it well
+     * suited to inspect counters or arrays of student objects in a loop.</p>
+     *
+     * @param fieldname the name of the field
+     * @param fieldType the type of the field
+     * @return a reference to the field
+     * @param <T> the type of the field
+     * @throws MissingFieldException if the field is not defined in the student class S
+     * @throws FieldStateException if the field is static
+     * @throws FieldTypeException if the type of the field in student class S does not match the expected type
+     */
+    public <T> FieldRef<I,T> field(String fieldname, Class<T> fieldType)
+            throws MissingFieldException, FieldStateException, FieldTypeException {
+        Field f = getField(fieldname, fieldType, false);
+        return new FieldRef<>(this, f, varHandle(f));
+    }
+
+    /**
+     * <p>Looks up a static field of the student class S once, and returns a reference that can be used to read
+     * and write the field repeatedly without any further lookups.</p>
+     *
+     * @param fieldname the name of the field
+     * @param fieldType the type of the field
+     * @return a reference to the static field
+     * @param <T> the type of the field
+     * @throws MissingFieldException if the field is not defined in the student class S
+     * @throws FieldStateException if the field is non-static
+     * @throws FieldTypeException if the type of the field in student class S does not match the expected type
+     */
+    public <T> StaticFieldRef<T> staticField(String fieldname, Class<T> fieldType)
+            throws MissingFieldException, FieldStateException, FieldTypeException {
+        Field f = getField(fieldname, fieldType, true);
+        return new StaticFieldRef<>(f, varHandle(f));
+    }
+
+    private VarHandle varHandle(Field f) {
+        try {
+            return MethodHandles.privateLookupIn(studentClass, MethodHandles.lookup()).unreflectVarHandle(f);
+        } catch (IllegalAccessException e) {
+            throw new AssertionError("Reflective access is disabled: "+e.getMessage(), e);
+        }
+    }
+
     private Object readField(Field f, Object obj) {
         try {
-            boolean acc = f.canAccess(obj);
-            if (!acc) {
-                f.setAccessible(true);
-            }
-            Object value = f.get(obj);
-            if (!acc) {
-                f.setAccessible(false);
-            }
-            return value;
+            return f.get(obj);
         }
         catch (IllegalAccessException e) {
             throw new AssertionError("Reflective access is disabled: "+e.getMessage(), e);
@@ -430,23 +544,136 @@ public final class WrapperFactory<I,S> {
 
     private void setField(Field f, Object obj, Object value) {
         try {
-            boolean acc = f.canAccess(obj);
-            if (!acc) {
-                f.setAccessible(true);
-            }
             f.set(obj, value);
-            if (!acc) {
-                f.setAccessible(false);
-            }
         }
         catch (IllegalAccessException e) {
             throw new AssertionError("Reflective access is disabled: "+e.getMessage(), e);
         }
     }
 
-    private Method findStaticMethod(String methodName, Class<?> returnType, Object... args) {
-        Class<?>[] parameterTypes = typeArray(args);
-        Method method = MethodUtils.getMatchingAccessibleMethod(studentClass, methodName, parameterTypes);
+    /**
+     * The strategy this factory uses to delegate calls on wrapper objects to the student class
+     * @return the invocation strategy of this factory
+     */
+    public InvocationStrategy getInvocationStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Checks whether objects of the student class are returned without a wrapper, which is the case if this factory
+     * uses the {@link InvocationStrategy#PASS_THROUGH} strategy and the student class implements the target interface
+     * @return true if objects of the student class are not wrapped by this factory
+     */
+    public boolean isPassThrough() {
+        return passThrough;
+    }
+
+    /**
+     * <p>Resolves all methods of the target interface I and the requested constructors of the student class S in
+     * advance, and stores them in the caches of this factory.</p>
+     *
+     * <p>By default all methods and constructors are looked up when they are used for the first time. Calling this
+     * method in a method annotated with {@code @BeforeAll} moves the cost of these lookups out of the test methods,
+     * and allows a test to fail fast if the student class is incomplete.</p>
+     *
+     * @param constructorSignatures the argument types of the constructors that should be resolved
+     * @return a report with the methods and constructors that are missing from the student class
+     */
+    public LinkReport link(Class<?>[]... constructorSignatures) {
+        List<MissingConstructorException> missingConstructors = new ArrayList<>();
+        for (Class<?>[] signature : constructorSignatures) {
+            try {
+                findConstructor(signature);
+            } catch (MissingConstructorException ex) {
+                missingConstructors.add(ex);
+            }
+        }
+        List<MissingMethodException> missingMethods = new ArrayList<>();
+        for (Method m : targetInterface.getMethods()) {
+            if (Modifier.isStatic(m.getModifiers())) {
+                continue;
+            }
+            try {
+                if (strategy == InvocationStrategy.REFLECTION || generatedClass != null) {
+                    findMethod(m);
+                }
+                else {
+                    findHandle(m);
+                }
+            } catch (MissingMethodException ex) {
+                missingMethods.add(ex);
+            }
+        }
+        return new LinkReport(studentClass, missingMethods, missingConstructors);
+    }
+
+    private Constructor<S> findConstructor(Class<?>[] argumentTypes) throws MissingConstructorException {
+        Constructor<S> cons = constructorMap.get(Arrays.asList(argumentTypes));
+        if (cons == null) {
+            cons = ConstructorUtils.getMatchingAccessibleConstructor(studentClass, argumentTypes);
+            if (cons == null) {
+                throw new MissingConstructorException(Arrays.asList(argumentTypes), studentClass);
+            }
+            constructorMap.putIfAbsent(Arrays.asList(argumentTypes.clone()), cons);
+        }
+        return cons;
+    }
+
+    private Method findMethod(Method method) throws MissingMethodException {
+        Method sourceMethod = methodMap.get(method);
+        if (sourceMethod == null) {
+            try {
+                sourceMethod = studentClass.getMethod(method.getName(), method.getParameterTypes());
+                methodMap.putIfAbsent(method, sourceMethod);
+            } catch (NoSuchMethodException e) {
+                throw new MissingMethodException(method, studentClass);
+            } catch (SecurityException e) {
+                throw new AssertionError("Reflective access is disabled: "+e.getMessage(), e);
+            }
+        }
+        return sourceMethod;
+    }
+
+    /**
+     * <p>Looks up a static method of the student class S once, and returns a reference that can be used to call
+     * it repeatedly without any further lookups.</p>
+     *
+     * <p>This is useful if a static method is called many times, for example in a loop. Rather than calling
+     * {@link #invokeStatic(String, Class, Object...)} in every iteration, the reference can be obtained before
+     * the loop starts.</p>
+     *
+     * @param methodName the name of the static method in student class S
+     * @param returnType a Class representing the return type of the method
+     * @param parameterTypes the types of the arguments of the method
+     * @return a reference to the static method
+     * @param <E> the return type of the static method
+     * @throws MissingStaticMethodException if the static method does not exist in student class S
+     * @throws MethodStateException if the method can be found, but is a non-static method
+     */
+    public <E> StaticMethodRef<E> staticMethod(String methodName, Class<E> returnType, Class<?>... parameterTypes)
+            throws MissingStaticMethodException, MethodStateException {
+        Method m = findStaticMethod(methodName, returnType, parameterTypes);
+        try {
+            MethodHandle handle = MethodHandles.publicLookup()
+                    .unreflect(m)
+                    .asSpreader(Object[].class, m.getParameterCount())
+                    .asType(STATIC_GENERIC_TYPE);
+            return new StaticMethodRef<>(m, handle);
+        } catch (IllegalAccessException e) {
+            throw new AssertionError("Reflective access is disabled: "+e.getMessage(), e);
+        }
+    }
+
+    private Method findStaticMethod(String methodName, Class<?> returnType, Class<?>[] parameterTypes) {
+        List<Object> key = new ArrayList<>(parameterTypes.length + 2);
+        key.add(methodName);
+        key.add(returnType);
+        key.addAll(Arrays.asList(parameterTypes));
+        Method method = staticMethodMap.get(key);
+        if (method != null) {
+            return method;
+        }
+        method = MethodUtils.getMatchingAccessibleMethod(studentClass, methodName, parameterTypes);
         if (method == null)  {
             throw new MissingStaticMethodException(studentClass, methodName, returnType, Arrays.asList(parameterTypes));
         }
@@ -455,14 +682,21 @@ public final class WrapperFactory<I,S> {
         }
         boolean isVoid = returnType == void.class && method.getReturnType() == void.class;
         if (isVoid || returnType.isAssignableFrom(method.getReturnType())) {
+            staticMethodMap.putIfAbsent(key, method);
             return method;
         }
         throw new MissingStaticMethodException(studentClass, methodName, returnType, Arrays.asList(parameterTypes));
     }
 
+    /**
+     * Finds a field of the student class and checks its state and type. The field objects stored in the caches
+     * are private copies that are made accessible once when they are resolved, so they can be used by several
+     * threads without toggling their accessibility.
+     */
     private Field getField(String fieldname, Class<?> fieldType, boolean staticField) {
         Field result = staticField ? staticFieldMap.get(fieldname) : fieldMap.get(fieldname);
         if (result != null) {
+            checkField(result, fieldType, staticField);
             return result;
         }
         try {
@@ -478,22 +712,34 @@ public final class WrapperFactory<I,S> {
                 throw new MissingFieldException(fieldname, studentClass, fieldType, staticField);
             }
         }
-        if (Modifier.isStatic(result.getModifiers()) != staticField) {
-            throw new FieldStateException(result, staticField);
-        }
-        if (!result.getType().isAssignableFrom(fieldType)) {
-            throw new FieldTypeException(result, fieldType);
+        checkField(result, fieldType, staticField);
+        try {
+            result.trySetAccessible();
+        } catch (SecurityException e) {
+            throw new AssertionError("Reflective access is disabled: "+e.getMessage(), e);
         }
         if (staticField) {
-            staticFieldMap.put(fieldname, result);
+            staticFieldMap.putIfAbsent(fieldname, result);
         }
         else {
-            fieldMap.put(fieldname, result);
+            fieldMap.putIfAbsent(fieldname, result);
         }
         return result;
     }
 
+    private void checkField(Field f, Class<?> fieldType, boolean staticField) {
+        if (Modifier.isStatic(f.getModifiers()) != staticField) {
+            throw new FieldStateException(f, staticField);
+        }
+        if (!f.getType().isAssignableFrom(fieldType)) {
+            throw new FieldTypeException(f, fieldType);
+        }
+    }
+
     private Class<?>[] typeArray(Object... args) {
+        if (args.length == 0) {
+            return NO_TYPES;
+        }
         Class<?>[] result = new Class[args.length];
         for (int i=0; i < args.length; i++) {
             Object o = args[i];
@@ -564,18 +810,12 @@ public final class WrapperFactory<I,S> {
          */
         public Object invoke(Object obj, Method method, Object [] args) throws MissingMethodException,
                 RuntimeException, Throwable {
-            Method sourceMethod = methodMap.get(method);
-            if (sourceMethod == null) {
-                try {
-                    Method target = studentClass.getMethod(method.getName(), method.getParameterTypes());
-                    sourceMethod = target;
-                    methodMap.put(method, target);
-                } catch (NoSuchMethodException e) {
-                    throw new MissingMethodException(method, studentClass);
-                } catch (SecurityException e) {
-                    throw new AssertionError("Reflective access is disabled: "+e.getMessage(), e);
-                }
+            if (strategy != InvocationStrategy.REFLECTION) {
+                MethodHandle handle = findHandle(method);
+                Object[] handleArgs = args == null ? NO_ARGS : args;
+                return (Object) handle.invokeExact((Object) source, handleArgs);
             }
+            Method sourceMethod = findMethod(method);
             try {
                 return sourceMethod.invoke(source, args);
             } catch (IllegalAccessException e) {
@@ -587,4 +827,31 @@ public final class WrapperFactory<I,S> {
         }
     }
 
+    /**
+     * Resolves a method of the target interface into a method handle that calls the corresponding method of the
+     * student class. The handle is adapted to the type (Object,Object[])Object, so it can be called using
+     * invokeExact with the receiver and the argument array that is passed to an InvocationHandler.
+     *
+     * @param method the method of the target interface
+     * @return a cached method handle that calls the corresponding method of the student class
+     * @throws MissingMethodException if no matching method was found in the student class
+     */
+    private MethodHandle findHandle(Method method) throws MissingMethodException {
+        MethodHandle handle = handleMap.get(method);
+        if (handle != null) {
+            return handle;
+        }
+        Method target = findMethod(method);
+        try {
+            handle = MethodHandles.publicLookup()
+                    .unreflect(target)
+                    .asSpreader(Object[].class, target.getParameterCount())
+                    .asType(GENERIC_TYPE);
+        } catch (IllegalAccessException e) {
+            throw new AssertionError("Reflective access is disabled: "+e.getMessage(), e);
+        }
+        handleMap.putIfAbsent(method, handle);
+        return handle;
+    }
+
 }
@@ -17,14 +17,24 @@ package com.github.pcbouman_eur.testing.wrapper.test;
 
 import com.github.pcbouman_eur.testing.wrapper.exception.*;
 import com.github.pcbouman_eur.testing.wrapper.test.impl.*;
+import com.github.pcbouman_eur.testing.wrapper.FieldRef;
+import com.github.pcbouman_eur.testing.wrapper.InvocationStrategy;
+import com.github.pcbouman_eur.testing.wrapper.LinkReport;
+import com.github.pcbouman_eur.testing.wrapper.StaticFieldRef;
+import com.github.pcbouman_eur.testing.wrapper.StaticMethodRef;
 import com.github.pcbouman_eur.testing.wrapper.WrapperFactory;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.lang.reflect.Proxy;
+import java.lang.reflect.UndeclaredThrowableException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -39,6 +49,28 @@ public class WrapperTests {
     private final WrapperFactory<ExceptionTestInterface, ExceptionGenerator> fac3
             = new WrapperFactory<>(ExceptionTestInterface.class, ExceptionGenerator.class);
 
+    private final WrapperFactory<TargetInterface, CorrectImplementation> mhFac1
+            = new WrapperFactory<>(TargetInterface.class, CorrectImplementation.class,
+                                   InvocationStrategy.METHOD_HANDLE);
+
+    private final WrapperFactory<TargetInterface, EmptyClass> mhFac2
+            = new WrapperFactory<>(TargetInterface.class, EmptyClass.class, InvocationStrategy.METHOD_HANDLE);
+
+    private final WrapperFactory<ExceptionTestInterface, ExceptionGenerator> mhFac3
+            = new WrapperFactory<>(ExceptionTestInterface.class, ExceptionGenerator.class,
+                                   InvocationStrategy.METHOD_HANDLE);
+
+    private final WrapperFactory<TargetInterface, CorrectImplementation> genFac1
+            = new WrapperFactory<>(TargetInterface.class, CorrectImplementation.class,
+                                   InvocationStrategy.GENERATED_CLASS);
+
+    private final WrapperFactory<TargetInterface, EmptyClass> genFac2
+            = new WrapperFactory<>(TargetInterface.class, EmptyClass.class, InvocationStrategy.GENERATED_CLASS);
+
+    private final WrapperFactory<ExceptionTestInterface, ExceptionGenerator> genFac3
+            = new WrapperFactory<>(ExceptionTestInterface.class, ExceptionGenerator.class,
+                                   InvocationStrategy.GENERATED_CLASS);
+
     @Test
     void testConstructors() {
         // Create some objects by calling constructors on the wrapper factories
@@ -111,6 +143,194 @@ public class WrapperTests {
         }
     }
 
+    @Test
+    void methodHandleStateTest() {
+        // Repeat this five times to detect potential issues with the method handle cache of the WrapperFactory
+        for (int t=0; t < 5; t++) {
+            CorrectImplementation ci = new CorrectImplementation();
+            TargetInterface ti = mhFac1.constructor();
+            compareObjects(ti, ci, "Compare initial states of directly and indirectly objects");
+            ci.setFlagToTrue();
+            ti.setFlagToTrue();
+            compareObjects(ti, ci, "Compare states after toggling flag");
+            ci.setBoxed(20);
+            ti.setBoxed(20);
+            compareObjects(ti, ci, "Compare states after using setBoxed");
+            ci.setPrimitive(25);
+            ti.setPrimitive(25);
+            compareObjects(ti, ci, "Compare states after using setPrimitive");
+            ci.addToList("test1", "test2", "zzzz");
+            ti.addToList("test1", "test2", "zzzz");
+            compareObjects(ti, ci, "Compare states after using addToList");
+        }
+    }
+
+    @Test
+    void methodHandleExceptionTest() throws Throwable {
+        TargetInterface empty = mhFac2.constructor();
+        assertThrows(MissingMethodException.class, empty::setFlagToTrue,
+                "Check if the method handle strategy throws a MissingMethodException for a missing method");
+        TargetInterface ti = mhFac1.constructor();
+        assertThrows(IllegalArgumentException.class, () -> ti.giveMePositive(-5),
+                "Check if runtime exceptions are thrown directly by the method handle strategy");
+        ExceptionTestInterface eti = mhFac3.constructorEx(false);
+        assertThrows(ExceptionGenerator.TestCheckedException.class, eti::getSomething,
+                "A TestCheckedException is thrown directly through the method handle strategy");
+        assertThrows(ExceptionGenerator.TestCheckedException.class, eti::doSomething,
+                "A TestCheckedException is thrown directly through the method handle strategy");
+    }
+
+    @Test
+    void generatedClassStateTest() {
+        // Repeat this five times to detect potential issues with the generated wrapper class
+        for (int t=0; t < 5; t++) {
+            CorrectImplementation ci = new CorrectImplementation();
+            TargetInterface ti = genFac1.constructor();
+            assertFalse(Proxy.isProxyClass(ti.getClass()), "A generated wrapper class should not be a Proxy");
+            compareObjects(ti, ci, "Compare initial states of directly and indirectly objects");
+            ci.setFlagToTrue();
+            ti.setFlagToTrue();
+            compareObjects(ti, ci, "Compare states after toggling flag");
+            ci.setBoxed(20);
+            ti.setBoxed(20);
+            compareObjects(ti, ci, "Compare states after using setBoxed");
+            ci.setPrimitive(25);
+            ti.setPrimitive(25);
+            compareObjects(ti, ci, "Compare states after using setPrimitive");
+            ci.addToList("test1", "test2", "zzzz");
+            ti.addToList("test1", "test2", "zzzz");
+            compareObjects(ti, ci, "Compare states after using addToList");
+            assertSame(genFac1.unwrap(ti).getClass(), CorrectImplementation.class,
+                    "Unwrapping a generated wrapper gives the object of the student class");
+            assertEquals(genFac1.unwrap(ti).hashCode(), ti.hashCode(),
+                    "The hashCode of a generated wrapper is delegated to the student object");
+        }
+    }
+
+    @Test
+    void generatedClassExceptionTest() throws Throwable {
+        TargetInterface empty = genFac2.constructor();
+        assertThrows(MissingMethodException.class, empty::setFlagToTrue,
+                "Check if the generated wrapper class throws a MissingMethodException for a missing method");
+        assertThrows(MissingMethodException.class, empty::getPrimitive,
+                "Check if the generated wrapper class throws a MissingMethodException for a missing method");
+        TargetInterface ti = genFac1.constructor();
+        assertThrows(IllegalArgumentException.class, () -> ti.giveMePositive(-5),
+                "Check if runtime exceptions are thrown directly by the generated wrapper class");
+        ExceptionTestInterface eti = genFac3.constructorEx(false);
+        assertThrows(ExceptionGenerator.TestCheckedException.class, eti::getSomething,
+                "A TestCheckedException is thrown directly through the generated wrapper class");
+        assertThrows(ExceptionGenerator.TestCheckedException.class, eti::doSomething,
+                "A TestCheckedException is thrown directly through the generated wrapper class");
+    }
+
+    @Test
+    void undeclaredExceptionTest() throws Throwable {
+        for (InvocationStrategy strategy : InvocationStrategy.values()) {
+            WrapperFactory<UndeclaredExceptionInterface, ExceptionGenerator> fac
+                    = new WrapperFactory<>(UndeclaredExceptionInterface.class, ExceptionGenerator.class, strategy);
+            UndeclaredExceptionInterface uei = fac.constructorEx(false);
+            if (strategy == InvocationStrategy.GENERATED_CLASS) {
+                assertFalse(Proxy.isProxyClass(uei.getClass()), "A wrapper class is generated");
+            }
+            UndeclaredThrowableException ex = assertThrows(UndeclaredThrowableException.class, uei::doSomething,
+                    "An undeclared checked exception is wrapped using strategy " + strategy);
+            assertInstanceOf(ExceptionGenerator.TestCheckedException.class, ex.getUndeclaredThrowable(),
+                    "The undeclared exception is the cause using strategy " + strategy);
+            assertThrows(ExceptionGenerator.TestCheckedException.class, uei::getSomething,
+                    "A declared checked exception is thrown directly using strategy " + strategy);
+        }
+    }
+
+    @Test
+    void generatedClassCacheTest() {
+        WrapperFactory<TargetInterface, CorrectImplementation> fac
+                = new WrapperFactory<>(TargetInterface.class, CorrectImplementation.class,
+                                       InvocationStrategy.GENERATED_CLASS);
+        assertSame(genFac1.constructor().getClass(), fac.constructor().getClass(),
+                "Factories for the same types share the generated wrapper class");
+    }
+
+    @Test
+    void concurrentAccessTest() throws Exception {
+        // A fresh factory is used so all threads race to fill the caches
+        for (InvocationStrategy strategy : InvocationStrategy.values()) {
+            WrapperFactory<TargetInterface, CorrectImplementation> fac
+                    = new WrapperFactory<>(TargetInterface.class, CorrectImplementation.class, strategy);
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t=0; t < 32; t++) {
+                    futures.add(executor.submit(() -> {
+                        for (int i=0; i < 100; i++) {
+                            TargetInterface ti = i % 2 == 0 ? fac.constructor() : fac.constructor(i, List.of("x"));
+                            ti.setPrimitive(i);
+                            assertEquals(i, ti.getPrimitive(), "Calls through a shared factory should work");
+                            assertEquals("ab".repeat(3), fac.invokeStatic("staticMethod", String.class, "ab", 3),
+                                    "Static calls through a shared factory should work");
+                        }
+                    }));
+                }
+                for (Future<?> f : futures) {
+                    f.get();
+                }
+            }
+            finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void linkTest() {
+        for (InvocationStrategy strategy : InvocationStrategy.values()) {
+            WrapperFactory<TargetInterface, CorrectImplementation> correct
+                    = new WrapperFactory<>(TargetInterface.class, CorrectImplementation.class, strategy);
+            LinkReport report = correct.link(new Class<?>[0], new Class<?>[]{int.class, List.class});
+            assertTrue(report.isComplete(), "A correct implementation has no missing symbols: "+report);
+            assertDoesNotThrow(report::throwIfIncomplete);
+
+            WrapperFactory<TargetInterface, EmptyClass> empty
+                    = new WrapperFactory<>(TargetInterface.class, EmptyClass.class, strategy);
+            report = empty.link(new Class<?>[0], new Class<?>[]{int.class, List.class});
+            assertFalse(report.isComplete(), "The empty class misses methods and constructors");
+            assertEquals(TargetInterface.class.getMethods().length, report.getMissingMethods().size(),
+                    "All methods of the target interface are missing from the empty class");
+            assertEquals(1, report.getMissingConstructors().size(),
+                    "Only the constructor with arguments is missing from the empty class");
+            assertEquals(List.of(int.class, List.class),
+                    report.getMissingConstructors().get(0).getArgumentTypes());
+            assertThrows(MissingConstructorException.class, report::throwIfIncomplete,
+                    "Missing constructors are reported first");
+        }
+    }
+
+    @Test
+    void passThroughTest() {
+        WrapperFactory<TargetInterface, ImplementingClass> direct
+                = new WrapperFactory<>(TargetInterface.class, ImplementingClass.class, InvocationStrategy.PASS_THROUGH);
+        assertTrue(direct.isPassThrough(), "A class that implements the interface is not wrapped");
+        TargetInterface ti = direct.constructor(5, List.of("x"));
+        assertSame(ImplementingClass.class, ti.getClass(), "The object of the student class is returned directly");
+        assertSame(ti, direct.unwrap(ti), "Unwrapping an object that is not wrapped gives the same object");
+        assertEquals(5, ti.getPrimitive());
+        assertThrows(IllegalArgumentException.class, () -> ti.giveMePositive(-5),
+                "Check if runtime exceptions are thrown directly by a pass through object");
+
+        WrapperFactory<TargetInterface, CorrectImplementation> wrapped
+                = new WrapperFactory<>(TargetInterface.class, CorrectImplementation.class,
+                                       InvocationStrategy.PASS_THROUGH);
+        assertFalse(wrapped.isPassThrough(), "A class that does not implement the interface is wrapped");
+        TargetInterface ti2 = wrapped.constructor(5, List.of("x"));
+        assertFalse(ti2 instanceof CorrectImplementation, "An object of a class that does not implement the "
+                + "interface is wrapped");
+        assertEquals(5, ti2.getPrimitive());
+        WrapperFactory<TargetInterface, EmptyClass> empty
+                = new WrapperFactory<>(TargetInterface.class, EmptyClass.class, InvocationStrategy.PASS_THROUGH);
+        assertThrows(MissingMethodException.class, empty.constructor()::setFlagToTrue,
+                "Check if a wrapped object throws a MissingMethodException for a missing method");
+    }
+
     @Test
     void staticMethodTest() {
         // Check if calling a static method through the factory yields the same result as calling it directly
@@ -125,6 +345,49 @@ public class WrapperTests {
                 "A MethodStateException is thrown if a non-static method is called in a static way");
     }
 
+    @Test
+    void staticMethodRefTest() throws Throwable {
+        StaticMethodRef<String> ref = fac1.staticMethod("staticMethod", String.class, String.class, int.class);
+        for (int i=0; i < 5; i++) {
+            assertEquals(CorrectImplementation.staticMethod("ab", i), ref.invoke("ab", i),
+                    "Calling a static method through a reference gives the same result as calling it directly");
+        }
+        StaticMethodRef<Void> voidRef = fac1.staticMethod("staticAddToList", void.class,
+                List.class, String.class, int.class);
+        List<String> testList = new ArrayList<>();
+        voidRef.invoke(testList, "hi", 12);
+        assertEquals(12, testList.size(), "A static void method can be called through a reference");
+        assertThrows(MissingStaticMethodException.class,
+                () -> fac2.staticMethod("staticMethod", String.class, String.class, int.class),
+                "Check if the empty class indeed misses the static method");
+        assertThrows(MethodStateException.class,
+                () -> fac1.staticMethod("addToList", void.class, String.class, String.class, String.class),
+                "A MethodStateException is thrown if a reference to a non-static method is requested");
+        StaticMethodRef<String> exRef = fac3.staticMethod("getSomethingStatic", String.class);
+        assertThrows(WrappedException.class, exRef::invoke,
+                "A WrappedException is thrown if a static method called through a reference throws");
+        assertThrows(ExceptionGenerator.TestCheckedException.class, exRef::invokeEx,
+                "A TestCheckedException is thrown directly by the invokeEx method of a reference");
+    }
+
+    @Test
+    void repeatedSignatureTest() {
+        // Repeat this five times so later calls are served by the signature caches of the WrapperFactory
+        for (int t=0; t < 5; t++) {
+            assertEquals(t, fac1.constructor(t, List.of("x")).getPrimitive(),
+                    "A constructor can be called repeatedly with the same argument types");
+            assertThrows(MissingConstructorException.class, () -> fac1.constructor("x", List.of("x")),
+                    "A constructor with the same number of arguments but different types is not matched");
+            assertThrows(MissingConstructorException.class, () -> fac1.constructor(null, List.of("x")),
+                    "A constructor with a null argument is matched against the type Object");
+            assertEquals("x".repeat(t), fac1.invokeStatic("staticMethod", String.class, "x", t),
+                    "A static method can be called repeatedly with the same argument types");
+            assertThrows(MissingStaticMethodException.class,
+                    () -> fac1.invokeStatic("staticMethod", Integer.class, "x", 5),
+                    "A static method with the same arguments but a different return type is not matched");
+        }
+    }
+
     @Test
     void testFieldAccess() {
         // Repeat this five time to detect potential issues with the cache of the WrapperFactory
@@ -150,6 +413,45 @@ public class WrapperTests {
         }
     }
 
+    @Test
+    void testFieldRefs() {
+        StaticFieldRef<String> message = fac1.staticField("GLOBAL_MESSAGE", String.class);
+        String original = message.get();
+        assertEquals(CorrectImplementation.GLOBAL_MESSAGE, original,
+                "Check if a static field reference can read a static field");
+        message.set("A different message");
+        assertEquals("A different message", CorrectImplementation.GLOBAL_MESSAGE,
+                "Check if a static field reference can set a static field");
+        message.set(original);
+        assertEquals(CorrectImplementation.NUMBER, fac1.staticField("NUMBER", int.class).getInt(),
+                "Check if a static field reference can read a primitive static field");
+
+        for (WrapperFactory<TargetInterface, CorrectImplementation> fac : List.of(fac1, mhFac1, genFac1)) {
+            FieldRef<TargetInterface, Integer> number = fac.field("number", int.class);
+            TargetInterface ti = fac.constructor();
+            for (int i=0; i < 5; i++) {
+                ti.setPrimitive(i);
+                assertEquals(i, number.getInt(ti), "An object field can be read using a field reference");
+                assertEquals(i, number.get(ti), "An object field can be read using a field reference");
+                number.setInt(ti, 2*i);
+                assertEquals(2*i, ti.getPrimitive(), "An object field can be set using a field reference");
+                number.set(ti, 3*i);
+                assertEquals(3*i, ti.getPrimitive(), "An object field can be set using a field reference");
+            }
+            assertThrows(FieldTypeException.class, () -> number.getBoolean(ti),
+                    "A FieldTypeException is thrown if a field is read as the wrong primitive type");
+        }
+
+        assertThrows(FieldStateException.class, () -> fac1.field("GLOBAL_MESSAGE", String.class),
+                "A FieldStateException should be thrown for a field reference to a static field");
+        assertThrows(FieldStateException.class, () -> fac1.staticField("number", int.class),
+                "A FieldStateException should be thrown for a static field reference to a non-static field");
+        assertThrows(FieldTypeException.class, () -> fac1.field("number", String.class),
+                "A FieldTypeException should be thrown for a field reference of the wrong type");
+        assertThrows(MissingFieldException.class, () -> fac2.field("number", int.class),
+                "A MissingFieldException should be thrown for a field reference to a non-existing field");
+    }
+
     @Test
     void testExpectedMissingExceptions() {
         // First check if we do get MissingConstructorExceptions
@@ -0,0 +1,30 @@
+/* Copyright 2022 Paul Bouman
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+
+package com.github.pcbouman_eur.testing.wrapper.test.impl;
+
+import java.util.List;
+
+public class ImplementingClass extends CorrectImplementation implements TargetInterface {
+
+    public ImplementingClass() {
+        super();
+    }
+
+    public ImplementingClass(int initialNumber, List<String> initialList) {
+        super(initialNumber, initialList);
+    }
+
+}